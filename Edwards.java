@@ -1,5 +1,9 @@
 import java.math.BigInteger;
+import java.security.MessageDigest;
 import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Arithmetic on Edwards elliptic curves.
@@ -8,7 +12,21 @@ public class Edwards {
   public static final BigInteger p = BigInteger.TWO.pow(256).subtract(BigInteger.valueOf(189));
   public static final BigInteger d = BigInteger.valueOf(15343);
   public static final BigInteger r = BigInteger.TWO.pow(254).subtract(new BigInteger("87175310462106073678594642380840586067"));
+  /**
+   * d as a machine word, for multiplying field elements by d
+   */
+  private static final long D_SMALL = d.longValueExact();
+  private static final FieldElement ONE = new FieldElement(BigInteger.ONE);
   public static final Point G = getPoint(BigInteger.valueOf(-4), true);
+  /**
+   * Default wNAF window width for variable-base multiplication,
+   * set with -Dedwards.window=<2..8>
+   */
+  public static final int MUL_WINDOW = mulWindow(System.getProperty("edwards.window", "5"));
+  /**
+   * Shared cache for recurring public keys, sized with -Dedwards.keycache=<points>
+   */
+  public static final PointCache KEY_CACHE = new PointCache(Integer.getInteger("edwards.keycache", 1024));
 
   /**
    * Create an instance of the default curve NUMS-256.
@@ -17,9 +35,22 @@ public class Edwards {
 
   public static record Key(BigInteger s, Point V) {}
 
+  /**
+   * Parse the default window width, failing at class initialization rather than in a later mul.
+   */
+  private static int mulWindow(final String w) {
+    try {
+      final int width = Integer.parseInt(w);
+      if (width >= 2 && width <= 8) return width;
+    } catch (NumberFormatException e) {
+      // reported below
+    }
+    throw new IllegalArgumentException("edwards.window must be between 2 and 8, found: '" + w + "'");
+  }
+
   public static Key getKey(byte[] password) {
     final byte[] out = new byte[48];
-    SHA3SHAKE.SHAKE(128, password, out.length, out);
+    SHA3SHAKE.SHAKE(128, password, out.length << 3, out);
 
     BigInteger s = (new BigInteger(out)).mod(Edwards.r);
     Point V = Edwards.G.mul(s);
@@ -32,6 +63,182 @@ public class Edwards {
     return new Key(s, V);
   }
 
+  /**
+   * The Schnorr challenge of a signature, h = SHA3-256(U.y || message) mod r.
+   *
+   * @param Uy the y-coordinate of the commitment U = kG
+   * @param message the signed message
+   * @return the challenge h
+   */
+  public static BigInteger challenge(final BigInteger Uy, final byte[] message) {
+    final SHA3SHAKE sha256 = SHA3SHAKE.local(256, false);
+    sha256.absorb(Uy.toByteArray());
+    sha256.absorb(message);
+    return new BigInteger(sha256.digest()).mod(r);
+  }
+
+  /**
+   * A fresh nonce or ephemeral key, 384 random bits reduced mod r.
+   */
+  public static BigInteger randomScalar(final SecureRandom random) {
+    return new BigInteger(384, random).mod(r);
+  }
+
+  public static record Signature(BigInteger h, BigInteger z) {}
+
+  /**
+   * Sign a message with the private key s: with k random and U = kG,
+   * h is the challenge of U.y and the message and z = (k - hs) mod r.
+   *
+   * @param s the signer's private key
+   * @param message the message to sign
+   * @param random the source of the nonce k
+   * @return the signature (h, z)
+   */
+  public static Signature sign(final BigInteger s, final byte[] message, final SecureRandom random) {
+    final BigInteger k = randomScalar(random);
+    final Point U = G.mul(k);
+    final BigInteger h = challenge(U.y, message);
+    final BigInteger z = k.subtract(h.multiply(s).mod(r)).mod(r);
+    return new Signature(h, z);
+  }
+
+  /**
+   * The symmetric half of ec-encrypt and ec-decrypt. From the shared point
+   * W = kV = sZ, ka || ke = SHAKE256(W.y, 512), c is m XOR SHAKE128(ke)
+   * and the tag t is SHA3-256(ka || c).
+   *
+   * The message is passed through in pieces of any size, so it never has to
+   * be held whole. Encrypting absorbs c into the tag as it is produced; a
+   * decryption authenticates all of c first and only then decrypts it.
+   */
+  public static final class Envelope {
+    /**
+     * Z = kG, sent along with c and t
+     */
+    public final Point Z;
+    private final SHA3SHAKE keystream = new SHA3SHAKE();
+    private final SHA3SHAKE tag = new SHA3SHAKE();
+    private byte[] ks = new byte[0];
+
+    private Envelope(final Point Z, final Point W) {
+      this.Z = Z;
+      final byte[] ka_ke = new byte[64];
+      SHA3SHAKE.SHAKE(256, W.y.toByteArray(), ka_ke.length << 3, ka_ke);
+      this.keystream.init(128, true);
+      this.keystream.absorb(ka_ke, 32, 32);
+      this.tag.init(256);
+      this.tag.absorb(ka_ke, 0, 32);
+      Arrays.fill(ka_ke, (byte) 0);
+    }
+
+    /**
+     * Start encrypting to the public key V, with a fresh k.
+     */
+    public static Envelope seal(final Point V, final SecureRandom random) {
+      final BigInteger k = randomScalar(random);
+      return new Envelope(G.mul(k), V.mul(k));
+    }
+
+    /**
+     * Start decrypting Z with the private key s.
+     *
+     * @throws IllegalArgumentException when Z is not a point on the curve
+     */
+    public static Envelope open(final BigInteger s, final Point Z) {
+      if (Z.x == null) throw new IllegalArgumentException("Z is not a point on the curve");
+      return new Envelope(Z, Z.mul(s));
+    }
+
+    /**
+     * Encrypt the next len bytes of m in place, and absorb them into t.
+     */
+    public void encrypt(final byte[] b, final int off, final int len) {
+      this.xor(b, off, len);
+      this.tag.absorb(b, off, len);
+    }
+
+    /**
+     * Absorb the next len bytes of c into t.
+     */
+    public void authenticate(final byte[] c, final int off, final int len) {
+      this.tag.absorb(c, off, len);
+    }
+
+    /**
+     * Decrypt the next len bytes of c in place. Only call once c is authentic.
+     */
+    public void decrypt(final byte[] b, final int off, final int len) {
+      this.xor(b, off, len);
+    }
+
+    /**
+     * The tag t over all of c so far; ends the tag.
+     */
+    public byte[] tag() {
+      return this.tag.digest();
+    }
+
+    /**
+     * Whether t matches the tag over all of c, in constant time; ends the tag.
+     */
+    public boolean check(final byte[] t) {
+      return MessageDigest.isEqual(this.tag.digest(), t);
+    }
+
+    private void xor(final byte[] b, final int off, final int len) {
+      if (this.ks.length < len) this.ks = new byte[len];
+      this.keystream.squeeze(this.ks, 0, len);
+      for (int i = 0; i < len; i++) b[off + i] ^= this.ks[i];
+    }
+  }
+
+  /**
+   * Verify a signature (h, z) on a message under the public key V,
+   * by recomputing U' = zG + hV and checking that h is its challenge.
+   *
+   * @param V the signer's public key
+   * @param h the signature challenge
+   * @param z the signature response
+   * @param message the signed message
+   * @return whether the signature is valid
+   */
+  public static boolean verify(final Point V, final BigInteger h, final BigInteger z, final byte[] message) {
+    return verifyAll(new Point[] { V }, new BigInteger[] { h }, new BigInteger[] { z }, new byte[][] { message })[0];
+  }
+
+  /**
+   * Verify many signatures at once. Each challenge commits to its own U', so
+   * every U'[i] = z[i]G + h[i]V[i] is still computed (by a joint multiplication,
+   * sharing the doublings of both terms), but the commitments
+   * stay in extended coordinates and are brought back to affine together with
+   * a single field inversion for the whole batch.
+   *
+   * @param V the signers' public keys
+   * @param h the signature challenges
+   * @param z the signature responses
+   * @param messages the signed messages
+   * @return for each signature, whether it is valid
+   */
+  public static boolean[] verifyAll(final Point[] V, final BigInteger[] h, final BigInteger[] z, final byte[][] messages) {
+    final int n = V.length;
+    if (h.length != n || z.length != n || messages.length != n) {
+      throw new IllegalArgumentException("Mismatched batch lengths.");
+    }
+
+    final Extended[] U = new Extended[n];
+    for (int i = 0; i < n; i++) {
+      U[i] = Extended.mulAdd(z[i].mod(r), G, h[i].mod(r), V[i]);
+    }
+
+    final Point[] UPrime = Extended.toAffine(U);
+    final boolean[] valid = new boolean[n];
+    for (int i = 0; i < n; i++) {
+      valid[i] = challenge(UPrime[i].y, messages[i]).equals(h[i]);
+    }
+    return valid;
+  }
+
   /**
    * Determine if a given affine coordinate pair P = (x, y)
    * defines a point on the curve.
@@ -41,11 +248,13 @@ public class Edwards {
    * @return whether P is really a point on the curve
    */
   public boolean isPoint(BigInteger x, BigInteger y) {
-    final BigInteger x2 = x.multiply(x).mod(p);
-    final BigInteger y2 = y.multiply(y).mod(p);
-    final BigInteger x2y2 = x2.multiply(y2).mod(p);
-    final BigInteger sumx2y2 = x2.add(y2).mod(p);
-    final BigInteger curveEq = BigInteger.ONE.add(d.multiply(x2y2)).mod(p);
+    final FieldElement x2 = new FieldElement(x);
+    final FieldElement y2 = new FieldElement(y);
+    x2.sqr(x2);
+    y2.sqr(y2);
+    final FieldElement sumx2y2 = new FieldElement().add(x2, y2);
+    final FieldElement curveEq = new FieldElement().mul(x2, y2);
+    curveEq.mul(curveEq, D_SMALL).add(curveEq, ONE);
 
     return sumx2y2.equals(curveEq);
   }
@@ -71,26 +280,130 @@ public class Edwards {
    */
   public static Point getPoint(BigInteger y, final boolean x_lsb) {
       assert !y.equals(BigInteger.valueOf(-1));
-      y = y.mod(p);
-      final BigInteger ny2 = y.modPow(BigInteger.TWO, p).negate().mod(p);
-      final BigInteger a1 = ny2.add(BigInteger.ONE).mod(p);
-      final BigInteger a2 = ny2.multiply(d).add(BigInteger.ONE).mod(p);
-      final BigInteger x = sqrt(a1.multiply(a2.modInverse(p)).mod(p), p, x_lsb);
-      return new Point(x,y);
+      final FieldElement Y = new FieldElement(y);
+      final FieldElement ny2 = new FieldElement().sqr(Y);
+      ny2.neg(ny2);
+      final FieldElement a1 = new FieldElement().add(ny2, ONE);
+      final FieldElement a2 = new FieldElement().mul(ny2, D_SMALL);
+      a2.add(a2, ONE);
+
+      // x = sqrt(a1 / a2), in one exponentiation with no inversion
+      final FieldElement x = new FieldElement();
+      if (!x.sqrtRatio(a1, a2)) {
+        return new Point(null, Y.toBigInteger());
+      }
+      if (!x.isZero() && x.isOdd() != x_lsb) {
+        x.neg(x);
+      }
+      return new Point(x.toBigInteger(), Y.toBigInteger());
   }
 
-  private static BigInteger sqrt(BigInteger v, BigInteger p, boolean lsb) {
-    assert (p.testBit(0) && p.testBit(1));
-    if (v.signum() == 0) {
-      return BigInteger.ZERO;
-    }
-    BigInteger r = v.modPow(p.shiftRight(2).add(BigInteger.ONE), p);
-    if (r.testBit(0) != lsb) {
-      r = p.subtract(r);
+  /**
+   * Create many points from their y-coordinates and
+   * the least significant bits (LSB) of their x-coordinates.
+   *
+   * @param y the y-coordinates of the desired points
+   * @param x_lsb the LSB of each x-coordinate
+   * @return the points, each as getPoint would return it
+   */
+  public static Point[] getPoints(final BigInteger[] y, final boolean[] x_lsb) {
+    if (y.length != x_lsb.length) throw new IllegalArgumentException("Mismatched batch lengths.");
+
+    final Point[] points = new Point[y.length];
+    for (int i = 0; i < y.length; i++) {
+      points[i] = getPoint(y[i], x_lsb[i]);
     }
-    return (r.multiply(r).subtract(v).mod(p).signum() == 0) ? r : null;
+    return points;
+  }
+
+  /**
+   * Invert many integers mod p at once with a single modular inversion
+   * (Montgomery's simultaneous inversion). Zeros stay zero.
+   *
+   * @param a the integers to invert
+   * @return a[i]^-1 mod p for each a[i]
+   */
+  public static BigInteger[] invertAll(final BigInteger[] a) {
+    final FieldElement[] fe = new FieldElement[a.length];
+    for (int i = 0; i < a.length; i++) fe[i] = new FieldElement(a[i]);
+    FieldElement.invertAll(fe);
+
+    final BigInteger[] out = new BigInteger[a.length];
+    for (int i = 0; i < a.length; i++) out[i] = fe[i].toBigInteger();
+    return out;
   }
 
+  /**
+   * A bounded, thread-safe cache of decompressed points keyed by their encoding
+   * (y, LSB of x), evicting the least recently used point when full. Cached
+   * points keep their own wNAF tables, so repeat multiplications by a recurring
+   * public key skip both the decompression and the table.
+   */
+  public static final class PointCache {
+    private record Encoding(BigInteger y, boolean x_lsb) {}
+
+    private final LinkedHashMap<Encoding, Point> points;
+    private long hits;
+    private long misses;
+
+    /**
+     * Create an empty cache.
+     *
+     * @param capacity the most points the cache holds
+     */
+    public PointCache(final int capacity) {
+      if (capacity < 1) throw new IllegalArgumentException("Invalid cache capacity.");
+      this.points = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Encoding, Point> eldest) {
+          return size() > capacity;
+        }
+      };
+    }
+
+    /**
+     * Get a point from its y-coordinate and the LSB of its x-coordinate,
+     * decompressing it with getPoint on a miss.
+     *
+     * @param y the y-coordinate of the desired point
+     * @param x_lsb the LSB of its x-coordinate
+     * @return the point, as getPoint would return it
+     */
+    public Point get(final BigInteger y, final boolean x_lsb) {
+      final Encoding key = new Encoding(y.mod(p), x_lsb);
+      synchronized (this) {
+        final Point P = this.points.get(key);
+        if (P != null) {
+          this.hits++;
+          return P;
+        }
+        this.misses++;
+      }
+
+      // decompress outside the lock, a racing miss on the same key only repeats the work
+      final Point P = getPoint(y, x_lsb);
+      synchronized (this) {
+        final Point cached = this.points.putIfAbsent(key, P);
+        return cached != null ? cached : P;
+      }
+    }
+
+    public synchronized long hits() {
+      return this.hits;
+    }
+
+    public synchronized long misses() {
+      return this.misses;
+    }
+
+    public synchronized int size() {
+      return this.points.size();
+    }
+
+    public synchronized void clear() {
+      this.points.clear();
+    }
+  }
 
   /**
    * Display a human-readable representation of this curve.
@@ -105,6 +418,287 @@ public class Edwards {
     return "NUMS ed-256-mers*: x^2 + y^2 = 1 + " + d + "*x^2*y^2 mod p";
   }
 
+  /**
+   * Fixed-base table for multiplying the generator G, built on first use.
+   * Entry [i][j] is (j + 1) * 16^i * G, so a scalar written in signed radix 16
+   * (digits in [-8, 8)) is multiplied with one table addition per digit
+   * and no doublings.
+   */
+  private static final class FixedBase {
+    /**
+     * Signed radix-16 digits of a scalar below 2^256, one extra for the final carry
+     */
+    private static final int WINDOWS = 65;
+    private static final Extended[][] TABLE = new Extended[WINDOWS][8];
+    /**
+     * Odd multiples G, 3G, ..., 127G for G's wNAF digits in joint multiplications,
+     * where the doublings are shared with the other term anyway
+     */
+    static final int ODD_WIDTH = 8;
+    static final Extended[] ODD = Extended.oddMultiples(new Extended(G), ODD_WIDTH);
+
+    static {
+      Extended base = new Extended(G);
+      for (int i = 0; i < WINDOWS; i++) {
+        TABLE[i][0] = base;
+        for (int j = 1; j < 8; j++) {
+          TABLE[i][j] = new Extended().add(TABLE[i][j - 1], base);
+        }
+        base = new Extended().dbl(TABLE[i][7]);
+      }
+    }
+
+    /**
+     * Multiply G by a scalar.
+     *
+     * @param m a scalar factor, 0 <= m < r
+     * @return m*G
+     */
+    static Point mul(final BigInteger m) {
+      assert m.signum() >= 0 && m.bitLength() <= 256;
+
+      final Extended V = new Extended();
+      final Extended N = new Extended();
+      int carry = 0;
+      for (int i = 0; i < WINDOWS; i++) {
+        int digit = carry;
+        for (int b = 0; b < 4; b++) {
+          if (m.testBit(4 * i + b)) digit += 1 << b;
+        }
+        carry = digit >= 8 ? 1 : 0;
+        digit -= carry << 4;
+
+        if (digit > 0) {
+          V.add(V, TABLE[i][digit - 1]);
+        } else if (digit < 0) {
+          V.add(V, N.negate(TABLE[i][-digit - 1]));
+        }
+      }
+      assert carry == 0;
+
+      return V.toAffine();
+    }
+  }
+
+  /**
+   * Edwards curve point in extended coordinates (X:Y:Z:T),
+   * standing for the affine point (X/Z, Y/Z) with T = XY/Z.
+   * Addition and doubling need no inversion, so points stay in this form
+   * for a whole computation and are brought back to affine once at the end.
+   * Points are mutable and every operation writes into this, using the
+   * point's own scratch elements, so the loops in mul allocate nothing.
+   */
+  private static final class Extended {
+    final FieldElement X = new FieldElement(), Y = new FieldElement(), Z = new FieldElement(), T = new FieldElement();
+    private final FieldElement A = new FieldElement(), B = new FieldElement(), C = new FieldElement(), D = new FieldElement();
+    private final FieldElement E = new FieldElement(), F = new FieldElement(), G = new FieldElement(), H = new FieldElement();
+
+    /**
+     * Create the neutral element O = (0 : 1 : 1 : 0).
+     */
+    Extended() {
+      Y.set(1); Z.set(1);
+    }
+
+    Extended(final Point P) {
+      X.set(P.x); Y.set(P.y); Z.set(1); T.mul(X, Y);
+    }
+
+    Extended(final Extended P) {
+      set(P);
+    }
+
+    Extended set(final Extended P) {
+      X.set(P.X); Y.set(P.Y); Z.set(P.Z); T.set(P.T);
+      return this;
+    }
+
+    /**
+     * this = -P
+     */
+    Extended negate(final Extended P) {
+      X.neg(P.X); Y.set(P.Y); Z.set(P.Z); T.neg(P.T);
+      return this;
+    }
+
+    /**
+     * this = P + Q, by unified addition (add-2008-hwcd with a = 1),
+     * complete as d is not a square mod p.
+     */
+    Extended add(final Extended P, final Extended Q) {
+      A.mul(P.X, Q.X);
+      B.mul(P.Y, Q.Y);
+      C.mul(P.T, Q.T).mul(C, D_SMALL);
+      D.mul(P.Z, Q.Z);
+      E.add(P.X, P.Y); H.add(Q.X, Q.Y); E.mul(E, H).sub(E, A).sub(E, B);
+      F.sub(D, C);
+      G.add(D, C);
+      H.sub(B, A);
+
+      X.mul(E, F); Y.mul(G, H); Z.mul(F, G); T.mul(E, H);
+      return this;
+    }
+
+    /**
+     * this = 2 * P, by dedicated doubling (dbl-2008-hwcd with a = 1).
+     */
+    Extended dbl(final Extended P) {
+      A.sqr(P.X);
+      B.sqr(P.Y);
+      C.sqr(P.Z).add(C, C);
+      E.add(P.X, P.Y).sqr(E).sub(E, A).sub(E, B);
+      G.add(A, B);
+      F.sub(G, C);
+      H.sub(A, B);
+
+      X.mul(E, F); Y.mul(G, H); Z.mul(F, G); T.mul(E, H);
+      return this;
+    }
+
+    /**
+     * @return this point in affine coordinates, with a single inversion
+     */
+    Point toAffine() {
+      A.invert(Z);
+      return new Point(B.mul(X, A).toBigInteger(), C.mul(Y, A).toBigInteger());
+    }
+
+    /**
+     * Bring many points back to affine coordinates, sharing a single inversion.
+     *
+     * @param P points in extended coordinates
+     * @return the same points in affine coordinates
+     */
+    static Point[] toAffine(final Extended[] P) {
+      final FieldElement[] inv = new FieldElement[P.length];
+      for (int i = 0; i < P.length; i++) inv[i] = new FieldElement().set(P[i].Z);
+      FieldElement.invertAll(inv);
+
+      final Point[] out = new Point[P.length];
+      for (int i = 0; i < P.length; i++) {
+        final Extended Q = P[i];
+        out[i] = new Point(Q.B.mul(Q.X, inv[i]).toBigInteger(), Q.C.mul(Q.Y, inv[i]).toBigInteger());
+      }
+      return out;
+    }
+
+    /**
+     * Width-w non-adjacent form of a scalar: digits d[i] with k = sum d[i] * 2^i,
+     * every non-zero digit odd and below 2^(w-1) in absolute value,
+     * and any w consecutive digits holding at most one non-zero.
+     *
+     * @param k a non-negative scalar
+     * @param w the window width, 2 <= w <= 8
+     * @return the digits, least significant first
+     */
+    static byte[] wnaf(final BigInteger k, final int w) {
+      assert k.signum() >= 0 && w >= 2 && w <= 8;
+
+      // five limbs, so adding back a negative digit can carry past bit 256
+      final long[] l = new long[5];
+      for (int i = 0; i < 5; i++) l[i] = k.shiftRight(64 * i).longValue();
+      assert k.bitLength() <= 256;
+
+      final byte[] naf = new byte[k.bitLength() + 1];
+      final long mask = (1L << w) - 1;
+      for (int i = 0; (l[0] | l[1] | l[2] | l[3] | l[4]) != 0; i++) {
+        if ((l[0] & 1) != 0) {
+          int digit = (int) (l[0] & mask);
+          if (digit >= 1 << (w - 1)) {
+            digit -= 1 << w;
+            // k -= digit, a carry up from the low window
+            long carry = -digit;
+            for (int j = 0; j < 5 && carry != 0; j++) {
+              l[j] += carry;
+              carry = Long.compareUnsigned(l[j], carry) < 0 ? 1 : 0;
+            }
+          } else {
+            // k -= digit only clears the low window
+            l[0] -= digit;
+          }
+          naf[i] = (byte) digit;
+        }
+        for (int j = 0; j < 4; j++) l[j] = (l[j] >>> 1) | (l[j + 1] << 63);
+        l[4] >>>= 1;
+      }
+      return naf;
+    }
+
+    /**
+     * The odd multiples P, 3P, 5P, ..., (2^(w-1) - 1)P used with a width-w NAF.
+     *
+     * @param P a point on the curve
+     * @param w the window width
+     * @return odd[i] = (2i + 1) * P
+     */
+    static Extended[] oddMultiples(final Extended P, final int w) {
+      final Extended[] odd = new Extended[1 << (w - 2)];
+      final Extended P2 = new Extended().dbl(P);
+      odd[0] = new Extended(P);
+      for (int i = 1; i < odd.length; i++) {
+        odd[i] = new Extended().add(odd[i - 1], P2);
+      }
+      return odd;
+    }
+
+    /**
+     * Multi-scalar multiplication by Straus' method over wNAF digits: the
+     * scalars are read together from the top, so all terms share one chain of
+     * doublings, with one table addition per non-zero digit.
+     *
+     * @param naf the wNAF digits of each scalar
+     * @param odd the odd multiples table of each point, wide enough for its digits
+     * @return the sum of every naf[j] * P[j]
+     */
+    static Extended interleaved(final byte[][] naf, final Extended[][] odd) {
+      assert naf.length == odd.length;
+
+      int top = 0;
+      for (final byte[] digits : naf) top = Math.max(top, digits.length);
+
+      final Extended V = new Extended();
+      final Extended N = new Extended();
+      boolean started = false;
+      for (int i = top - 1; i >= 0; i--) {
+        if (started) V.dbl(V);
+        for (int j = 0; j < naf.length; j++) {
+          if (i >= naf[j].length) continue;
+          final int digit = naf[j][i];
+          if (digit > 0) {
+            V.add(V, odd[j][digit >> 1]);
+            started = true;
+          } else if (digit < 0) {
+            V.add(V, N.negate(odd[j][-digit >> 1]));
+            started = true;
+          }
+        }
+      }
+
+      return V;
+    }
+
+    /**
+     * a * P + b * Q in one interleaved pass (Shamir's trick), reading the
+     * multiples of G from the cached width-8 table when P is G, and those of
+     * other points from the table each point keeps.
+     *
+     * @param a scalar factor of P, reduced mod r
+     * @param P a point on the curve
+     * @param b scalar factor of Q, reduced mod r
+     * @param Q a point on the curve
+     * @return a * P + b * Q
+     */
+    static Extended mulAdd(final BigInteger a, final Point P, final BigInteger b, final Point Q) {
+      final boolean fixed = P == Edwards.G;
+      final byte[][] naf = { wnaf(a, fixed ? FixedBase.ODD_WIDTH : MUL_WINDOW), wnaf(b, MUL_WINDOW) };
+      final Extended[][] odd = {
+        fixed ? FixedBase.ODD : P.oddMultiples(MUL_WINDOW),
+        Q.oddMultiples(MUL_WINDOW)
+      };
+      return interleaved(naf, odd);
+    }
+  }
+
   /**
    * Edwards curve point in affine coordinates.
    * NB: this is a nested class, enclosed within the Edwards class.
@@ -112,6 +706,11 @@ public class Edwards {
   public static class Point {
     public final BigInteger x;
     public final BigInteger y;
+    /**
+     * Odd multiples table for MUL_WINDOW, built on first use and kept with the
+     * point, so a recurring point (a cached public key) pays for it once
+     */
+    private volatile Extended[] odd;
 
     /**
      * Create a copy of the neutral element on this curve.
@@ -169,20 +768,8 @@ public class Edwards {
      * @return this + P
      */
     public Point add(Point P) {
-      final BigInteger x1 = this.x;
-      final BigInteger y1 = this.y;
-      final BigInteger x2 = P.x;
-      final BigInteger y2 = P.y;
-
-      final BigInteger num1 = (x1.multiply(y2)).add(y1.multiply(x2)).mod(p);
-      final BigInteger num2 = (y1.multiply(y2)).subtract(x1.multiply(x2)).mod(p);
-
-      final BigInteger denom1 = BigInteger.ONE.add(d.multiply(x1.multiply(x2.multiply(y1.multiply(y2)))));
-      final BigInteger denom2 = BigInteger.ONE.subtract(d.multiply(x1.multiply(x2.multiply(y1.multiply(y2)))));
-      final BigInteger x3 = num1.multiply(denom1.modInverse(p)).mod(p);
-      final BigInteger y3 = num2.multiply(denom2.modInverse(p)).mod(p);
-
-      return new Point(x3, y3);
+      final Extended V = new Extended(this);
+      return V.add(V, new Extended(P)).toAffine();
     }
 
     /**
@@ -192,21 +779,61 @@ public class Edwards {
      * @return m*P
      */
     public Point mul(BigInteger m) {
+      return mul(m, MUL_WINDOW);
+    }
+
+    /**
+     * Multiply a point P = (x, y) on the curve by a scalar m, using a width-w NAF
+     * of m over a per-call table of the odd multiples P, 3P, ..., (2^(w-1) - 1)P.
+     * Wider windows cost more table additions up front and fewer in the loop.
+     * Multiples of G use the cached fixed-base table whatever the width.
+     *
+     * @param m a scalar factor (an integer mod the curve order)
+     * @param w the window width, between 2 and 8
+     * @return m*P
+     */
+    public Point mul(BigInteger m, final int w) {
+      if (w < 2 || w > 8) throw new IllegalArgumentException("Invalid window width.");
+
       m = m.mod(r);
       if (m.signum() == 0) {
         return new Point();
       }
-      Point V = new Point();
-      Point P = this;
+      if (this == G) {
+        return FixedBase.mul(m);
+      }
 
-      for (int i = m.bitLength() - 1; i >= 0; i--) {
-        V = V.add(V);
-        if (m.testBit(i)) {
-          V = V.add(P);
-        }
+      return Extended.interleaved(
+        new byte[][] { Extended.wnaf(m, w) },
+        new Extended[][] { oddMultiples(w) }
+      ).toAffine();
+    }
+
+    /**
+     * The odd multiples P, 3P, ..., (2^(w-1) - 1)P of this point,
+     * memoized for the default window width.
+     */
+    private Extended[] oddMultiples(final int w) {
+      if (w != MUL_WINDOW) return Extended.oddMultiples(new Extended(this), w);
+      Extended[] table = this.odd;
+      if (table == null) {
+        this.odd = table = Extended.oddMultiples(new Extended(this), w);
       }
+      return table;
+    }
 
-      return V;
+    /**
+     * Compute a*P + b*Q for this point P in one interleaved pass, sharing
+     * the doublings of both terms (Shamir's trick). When P is the generator G
+     * its multiples come from a cached table.
+     *
+     * @param a the scalar factor of this point
+     * @param b the scalar factor of Q
+     * @param Q a point on the curve
+     * @return a*P + b*Q
+     */
+    public Point mulAdd(final BigInteger a, final BigInteger b, final Point Q) {
+      return Extended.mulAdd(a.mod(r), this, b.mod(r), Q).toAffine();
     }
 
     /**
@@ -0,0 +1,389 @@
+import java.math.BigInteger;
+
+/**
+ * Mutable element of the prime field F_p with p = 2^256 - 189, the field under Edwards.
+ * Held as four little-endian 64-bit limbs, reduced with 2^256 = 189 (mod p).
+ * Values are kept below 2^256 but not always below p; they are brought to their
+ * canonical form only where it matters (comparison, parity and toBigInteger).
+ * All arithmetic writes into this element and allocates nothing, and operands
+ * may alias this.
+ */
+final class FieldElement {
+  /**
+   * 2^256 mod p
+   */
+  private static final long C = 189;
+
+  /**
+   * Exponents for inversion (p - 2) and square roots of ratios ((p - 3) / 4), as limbs
+   */
+  private static final long[] P_MINUS_2 = limbs(Edwards.p.subtract(BigInteger.TWO));
+  private static final long[] SQRT_RATIO_EXP = limbs(Edwards.p.subtract(BigInteger.valueOf(3)).shiftRight(2));
+
+  private static final FieldElement ZERO = new FieldElement();
+
+  private long l0, l1, l2, l3;
+
+  /**
+   * Create the element zero.
+   */
+  FieldElement() {}
+
+  /**
+   * Create an element from an integer, reduced mod p.
+   *
+   * @param v any integer
+   */
+  FieldElement(final BigInteger v) {
+    set(v);
+  }
+
+  private static long[] limbs(BigInteger v) {
+    v = v.mod(Edwards.p);
+    return new long[] {
+      v.longValue(), v.shiftRight(64).longValue(), v.shiftRight(128).longValue(), v.shiftRight(192).longValue()
+    };
+  }
+
+  /**
+   * High 64 bits of the unsigned 128-bit product a * b.
+   */
+  private static long umulh(final long a, final long b) {
+    return Math.multiplyHigh(a, b) + ((a >> 63) & b) + ((b >> 63) & a);
+  }
+
+  FieldElement set(final BigInteger v) {
+    final long[] l = limbs(v);
+    this.l0 = l[0]; this.l1 = l[1]; this.l2 = l[2]; this.l3 = l[3];
+    return this;
+  }
+
+  FieldElement set(final FieldElement a) {
+    this.l0 = a.l0; this.l1 = a.l1; this.l2 = a.l2; this.l3 = a.l3;
+    return this;
+  }
+
+  FieldElement set(final long v) {
+    assert v >= 0;
+    this.l0 = v; this.l1 = 0; this.l2 = 0; this.l3 = 0;
+    return this;
+  }
+
+  /**
+   * Set this to a 256-bit value plus carry * 2^256, folding the carry back in as carry * 189.
+   */
+  private FieldElement fold(long r0, long r1, long r2, long r3, final long carry) {
+    // carry * 189 fits in 64 bits for any carry this class produces
+    long t = carry * C;
+    r0 += t; t = Long.compareUnsigned(r0, t) < 0 ? 1 : 0;
+    r1 += t; t = (t != 0 && r1 == 0) ? 1 : 0;
+    r2 += t; t = (t != 0 && r2 == 0) ? 1 : 0;
+    r3 += t; t = (t != 0 && r3 == 0) ? 1 : 0;
+    // a second wrap leaves r0..r3 tiny, so adding 189 once more cannot carry
+    r0 += t * C;
+
+    this.l0 = r0; this.l1 = r1; this.l2 = r2; this.l3 = r3;
+    return this;
+  }
+
+  /**
+   * this = a + b
+   */
+  FieldElement add(final FieldElement a, final FieldElement b) {
+    long c;
+    final long r0 = a.l0 + b.l0;
+    c = Long.compareUnsigned(r0, a.l0) < 0 ? 1 : 0;
+    long r1 = a.l1 + b.l1;
+    long c1 = Long.compareUnsigned(r1, a.l1) < 0 ? 1 : 0;
+    r1 += c; c = c1 | ((c != 0 && r1 == 0) ? 1 : 0);
+    long r2 = a.l2 + b.l2;
+    c1 = Long.compareUnsigned(r2, a.l2) < 0 ? 1 : 0;
+    r2 += c; c = c1 | ((c != 0 && r2 == 0) ? 1 : 0);
+    long r3 = a.l3 + b.l3;
+    c1 = Long.compareUnsigned(r3, a.l3) < 0 ? 1 : 0;
+    r3 += c; c = c1 | ((c != 0 && r3 == 0) ? 1 : 0);
+
+    return fold(r0, r1, r2, r3, c);
+  }
+
+  /**
+   * this = a - b
+   */
+  FieldElement sub(final FieldElement a, final FieldElement b) {
+    long br;
+    long r0 = a.l0 - b.l0;
+    br = Long.compareUnsigned(a.l0, b.l0) < 0 ? 1 : 0;
+    long r1 = a.l1 - b.l1;
+    long b1 = Long.compareUnsigned(a.l1, b.l1) < 0 ? 1 : 0;
+    b1 |= (br != 0 && r1 == 0) ? 1 : 0; r1 -= br; br = b1;
+    long r2 = a.l2 - b.l2;
+    b1 = Long.compareUnsigned(a.l2, b.l2) < 0 ? 1 : 0;
+    b1 |= (br != 0 && r2 == 0) ? 1 : 0; r2 -= br; br = b1;
+    long r3 = a.l3 - b.l3;
+    b1 = Long.compareUnsigned(a.l3, b.l3) < 0 ? 1 : 0;
+    b1 |= (br != 0 && r3 == 0) ? 1 : 0; r3 -= br; br = b1;
+
+    // a borrow added 2^256, take it back as 189, at most twice
+    for (int i = 0; i < 2 && br != 0; i++) {
+      final long s = br * C;
+      br = Long.compareUnsigned(r0, s) < 0 ? 1 : 0;
+      r0 -= s;
+      if (br != 0) { br = r1 == 0 ? 1 : 0; r1 -= 1; }
+      if (br != 0) { br = r2 == 0 ? 1 : 0; r2 -= 1; }
+      if (br != 0) { br = r3 == 0 ? 1 : 0; r3 -= 1; }
+    }
+
+    this.l0 = r0; this.l1 = r1; this.l2 = r2; this.l3 = r3;
+    return this;
+  }
+
+  /**
+   * this = -a
+   */
+  FieldElement neg(final FieldElement a) {
+    return sub(ZERO, a);
+  }
+
+  /**
+   * this = a * b
+   */
+  FieldElement mul(final FieldElement a, final FieldElement b) {
+    final long a0 = a.l0, a1 = a.l1, a2 = a.l2, a3 = a.l3;
+    final long b0 = b.l0, b1 = b.l1, b2 = b.l2, b3 = b.l3;
+
+    long c0 = 0, c1 = 0, c2 = 0, lo, hi;
+    lo = a0 * b0; hi = umulh(a0, b0);
+    c0 += lo; hi += Long.compareUnsigned(c0, lo) < 0 ? 1 : 0;
+    c1 += hi; c2 += Long.compareUnsigned(c1, hi) < 0 ? 1 : 0;
+    final long r0 = c0; c0 = c1; c1 = c2; c2 = 0;
+    lo = a0 * b1; hi = umulh(a0, b1);
+    c0 += lo; hi += Long.compareUnsigned(c0, lo) < 0 ? 1 : 0;
+    c1 += hi; c2 += Long.compareUnsigned(c1, hi) < 0 ? 1 : 0;
+    lo = a1 * b0; hi = umulh(a1, b0);
+    c0 += lo; hi += Long.compareUnsigned(c0, lo) < 0 ? 1 : 0;
+    c1 += hi; c2 += Long.compareUnsigned(c1, hi) < 0 ? 1 : 0;
+    final long r1 = c0; c0 = c1; c1 = c2; c2 = 0;
+    lo = a0 * b2; hi = umulh(a0, b2);
+    c0 += lo; hi += Long.compareUnsigned(c0, lo) < 0 ? 1 : 0;
+    c1 += hi; c2 += Long.compareUnsigned(c1, hi) < 0 ? 1 : 0;
+    lo = a1 * b1; hi = umulh(a1, b1);
+    c0 += lo; hi += Long.compareUnsigned(c0, lo) < 0 ? 1 : 0;
+    c1 += hi; c2 += Long.compareUnsigned(c1, hi) < 0 ? 1 : 0;
+    lo = a2 * b0; hi = umulh(a2, b0);
+    c0 += lo; hi += Long.compareUnsigned(c0, lo) < 0 ? 1 : 0;
+    c1 += hi; c2 += Long.compareUnsigned(c1, hi) < 0 ? 1 : 0;
+    final long r2 = c0; c0 = c1; c1 = c2; c2 = 0;
+    lo = a0 * b3; hi = umulh(a0, b3);
+    c0 += lo; hi += Long.compareUnsigned(c0, lo) < 0 ? 1 : 0;
+    c1 += hi; c2 += Long.compareUnsigned(c1, hi) < 0 ? 1 : 0;
+    lo = a1 * b2; hi = umulh(a1, b2);
+    c0 += lo; hi += Long.compareUnsigned(c0, lo) < 0 ? 1 : 0;
+    c1 += hi; c2 += Long.compareUnsigned(c1, hi) < 0 ? 1 : 0;
+    lo = a2 * b1; hi = umulh(a2, b1);
+    c0 += lo; hi += Long.compareUnsigned(c0, lo) < 0 ? 1 : 0;
+    c1 += hi; c2 += Long.compareUnsigned(c1, hi) < 0 ? 1 : 0;
+    lo = a3 * b0; hi = umulh(a3, b0);
+    c0 += lo; hi += Long.compareUnsigned(c0, lo) < 0 ? 1 : 0;
+    c1 += hi; c2 += Long.compareUnsigned(c1, hi) < 0 ? 1 : 0;
+    final long r3 = c0; c0 = c1; c1 = c2; c2 = 0;
+    lo = a1 * b3; hi = umulh(a1, b3);
+    c0 += lo; hi += Long.compareUnsigned(c0, lo) < 0 ? 1 : 0;
+    c1 += hi; c2 += Long.compareUnsigned(c1, hi) < 0 ? 1 : 0;
+    lo = a2 * b2; hi = umulh(a2, b2);
+    c0 += lo; hi += Long.compareUnsigned(c0, lo) < 0 ? 1 : 0;
+    c1 += hi; c2 += Long.compareUnsigned(c1, hi) < 0 ? 1 : 0;
+    lo = a3 * b1; hi = umulh(a3, b1);
+    c0 += lo; hi += Long.compareUnsigned(c0, lo) < 0 ? 1 : 0;
+    c1 += hi; c2 += Long.compareUnsigned(c1, hi) < 0 ? 1 : 0;
+    final long r4 = c0; c0 = c1; c1 = c2; c2 = 0;
+    lo = a2 * b3; hi = umulh(a2, b3);
+    c0 += lo; hi += Long.compareUnsigned(c0, lo) < 0 ? 1 : 0;
+    c1 += hi; c2 += Long.compareUnsigned(c1, hi) < 0 ? 1 : 0;
+    lo = a3 * b2; hi = umulh(a3, b2);
+    c0 += lo; hi += Long.compareUnsigned(c0, lo) < 0 ? 1 : 0;
+    c1 += hi; c2 += Long.compareUnsigned(c1, hi) < 0 ? 1 : 0;
+    final long r5 = c0; c0 = c1; c1 = c2; c2 = 0;
+    lo = a3 * b3; hi = umulh(a3, b3);
+    c0 += lo; hi += Long.compareUnsigned(c0, lo) < 0 ? 1 : 0;
+    c1 += hi; c2 += Long.compareUnsigned(c1, hi) < 0 ? 1 : 0;
+    final long r6 = c0; c0 = c1; c1 = c2; c2 = 0;
+    final long r7 = c0;
+    return reduce(r0, r1, r2, r3, r4, r5, r6, r7);
+  }
+
+  /**
+   * this = a^2
+   */
+  FieldElement sqr(final FieldElement a) {
+    return mul(a, a);
+  }
+
+  /**
+   * this = a * k for a small non-negative k
+   */
+  FieldElement mul(final FieldElement a, final long k) {
+    assert k >= 0 && k < (1L << 32);
+    long lo, hi, carry;
+    long r0 = a.l0 * k; carry = umulh(a.l0, k);
+    lo = a.l1 * k; hi = umulh(a.l1, k);
+    long r1 = lo + carry; carry = hi + (Long.compareUnsigned(r1, lo) < 0 ? 1 : 0);
+    lo = a.l2 * k; hi = umulh(a.l2, k);
+    long r2 = lo + carry; carry = hi + (Long.compareUnsigned(r2, lo) < 0 ? 1 : 0);
+    lo = a.l3 * k; hi = umulh(a.l3, k);
+    long r3 = lo + carry; carry = hi + (Long.compareUnsigned(r3, lo) < 0 ? 1 : 0);
+
+    return fold(r0, r1, r2, r3, carry);
+  }
+
+  /**
+   * Set this to the 512-bit r7..r0 mod p, as low + high * 189.
+   */
+  private FieldElement reduce(long r0, long r1, long r2, long r3,
+                              final long r4, final long r5, final long r6, final long r7) {
+    long lo, hi, carry;
+    lo = r4 * C; hi = umulh(r4, C);
+    r0 += lo; carry = hi + (Long.compareUnsigned(r0, lo) < 0 ? 1 : 0);
+
+    lo = r5 * C; hi = umulh(r5, C);
+    lo += carry; hi += Long.compareUnsigned(lo, carry) < 0 ? 1 : 0;
+    r1 += lo; carry = hi + (Long.compareUnsigned(r1, lo) < 0 ? 1 : 0);
+
+    lo = r6 * C; hi = umulh(r6, C);
+    lo += carry; hi += Long.compareUnsigned(lo, carry) < 0 ? 1 : 0;
+    r2 += lo; carry = hi + (Long.compareUnsigned(r2, lo) < 0 ? 1 : 0);
+
+    lo = r7 * C; hi = umulh(r7, C);
+    lo += carry; hi += Long.compareUnsigned(lo, carry) < 0 ? 1 : 0;
+    r3 += lo; carry = hi + (Long.compareUnsigned(r3, lo) < 0 ? 1 : 0);
+
+    return fold(r0, r1, r2, r3, carry);
+  }
+
+  /**
+   * this = a^e for an exponent given as four little-endian limbs
+   */
+  private FieldElement pow(final FieldElement a, final long[] e) {
+    final FieldElement base = new FieldElement().set(a);
+
+    set(1);
+    for (int i = 255; i >= 0; i--) {
+      sqr(this);
+      if (((e[i >>> 6] >>> (i & 63)) & 1) != 0) mul(this, base);
+    }
+    return this;
+  }
+
+  /**
+   * this = 1 / a, by Fermat (a^(p-2)); the inverse of zero is zero
+   */
+  FieldElement invert(final FieldElement a) {
+    return pow(a, P_MINUS_2);
+  }
+
+  /**
+   * Set this to a square root of u / v without inverting v. As p = 3 mod 4,
+   * (u/v)^((p+1)/4) = u^3 v (u^5 v^3)^((p-3)/4), a single exponentiation.
+   *
+   * @param u the numerator
+   * @param v the denominator, not zero
+   * @return whether u / v really was a square
+   */
+  boolean sqrtRatio(final FieldElement u, final FieldElement v) {
+    final FieldElement u3 = new FieldElement().sqr(u);
+    final FieldElement t = new FieldElement().mul(u3, u3);
+    u3.mul(u3, u);
+    t.mul(t, u);
+    final FieldElement v3 = new FieldElement().sqr(v);
+    v3.mul(v3, v);
+    t.mul(t, v3);
+
+    pow(t, SQRT_RATIO_EXP).mul(this, u3).mul(this, v);
+
+    // check v * x^2 == u
+    t.sqr(this).mul(t, v);
+    return t.equals(u);
+  }
+
+  /**
+   * Invert every element of an array in place with a single inversion
+   * (Montgomery's simultaneous inversion), for normalizing many projective
+   * points at once. Zero elements are left as zero.
+   *
+   * @param a the elements to invert
+   */
+  static void invertAll(final FieldElement[] a) {
+    if (a.length == 0) return;
+
+    // prefix[i] = a[0] * ... * a[i], skipping zeros
+    final FieldElement[] prefix = new FieldElement[a.length];
+    final FieldElement acc = new FieldElement().set(1);
+    for (int i = 0; i < a.length; i++) {
+      if (!a[i].isZero()) acc.mul(acc, a[i]);
+      prefix[i] = new FieldElement().set(acc);
+    }
+
+    // walk back, peeling one element off the inverted product at a time
+    acc.invert(acc);
+    final FieldElement t = new FieldElement();
+    for (int i = a.length - 1; i >= 0; i--) {
+      if (a[i].isZero()) continue;
+      if (i > 0) {
+        t.mul(acc, prefix[i - 1]);
+        acc.mul(acc, a[i]);
+        a[i].set(t);
+      } else {
+        a[i].set(acc);
+      }
+    }
+  }
+
+  /**
+   * Bring this to its canonical value below p.
+   */
+  private FieldElement canonical() {
+    // this >= p exactly when this + 189 carries out of 256 bits
+    final long r0 = this.l0 + C;
+    long c = Long.compareUnsigned(r0, C) < 0 ? 1 : 0;
+    final long r1 = this.l1 + c; c = (c != 0 && r1 == 0) ? 1 : 0;
+    final long r2 = this.l2 + c; c = (c != 0 && r2 == 0) ? 1 : 0;
+    final long r3 = this.l3 + c; c = (c != 0 && r3 == 0) ? 1 : 0;
+    if (c != 0) {
+      this.l0 = r0; this.l1 = r1; this.l2 = r2; this.l3 = r3;
+    }
+    return this;
+  }
+
+  boolean isZero() {
+    canonical();
+    return (this.l0 | this.l1 | this.l2 | this.l3) == 0;
+  }
+
+  /**
+   * @return the least significant bit of the canonical value
+   */
+  boolean isOdd() {
+    canonical();
+    return (this.l0 & 1) != 0;
+  }
+
+  boolean equals(final FieldElement a) {
+    canonical();
+    a.canonical();
+    return this.l0 == a.l0 && this.l1 == a.l1 && this.l2 == a.l2 && this.l3 == a.l3;
+  }
+
+  BigInteger toBigInteger() {
+    canonical();
+    final byte[] bytes = new byte[33];
+    final long[] l = { this.l3, this.l2, this.l1, this.l0 };
+    for (int i = 0; i < 4; i++)
+      for (int j = 0; j < 8; j++)
+        bytes[1 + 8 * i + j] = (byte) (l[i] >>> (56 - 8 * j));
+    return new BigInteger(bytes);
+  }
+
+  @Override
+  public String toString() {
+    return toBigInteger().toString();
+  }
+}
@@ -0,0 +1,140 @@
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Versioned binary encodings of keys, ciphertexts and signatures.
+ *
+ * Every file starts with a three byte magic naming what it holds and a
+ * one byte format version. Integers are fixed width, unsigned and big endian.
+ * A point is its 32-byte y-coordinate followed by one byte holding the
+ * least significant bit of its x-coordinate.
+ *
+ *   private key: "EDK" 2 | s (32)
+ *   public key:  "EDP" 2 | V (33)
+ *   ciphertext:  "EDC" 2 | Z (33) | t (32) | c (to the end of the file)
+ *   signature:   "EDS" 2 | h (32) | z (32)
+ *   counter mode SHAKE ciphertext:
+ *                "SKC" 2 | security level / 8 (1) | log2 keystream block size (1)
+ *                | nonce (16) | c
+ */
+final class Formats {
+  static final byte VERSION = 2;
+
+  static final byte[] PRIVATE_KEY = { 'E', 'D', 'K' };
+  static final byte[] PUBLIC_KEY = { 'E', 'D', 'P' };
+  static final byte[] CIPHERTEXT = { 'E', 'D', 'C' };
+  static final byte[] SIGNATURE = { 'E', 'D', 'S' };
+  static final byte[] SHAKE_CTR = { 'S', 'K', 'C' };
+
+  static final int MAGIC_BYTES = 4;
+  static final int SCALAR_BYTES = 32;
+  static final int POINT_BYTES = SCALAR_BYTES + 1;
+  static final int TAG_BYTES = 32;
+
+  private Formats() {}
+
+  /**
+   * Whether the contents of a file start with the given magic, of any version.
+   * Contents that are too short simply do not match.
+   */
+  static boolean hasMagic(final byte[] contents, final byte[] magic) {
+    return contents.length >= magic.length && ByteBuffer.wrap(contents, 0, magic.length).equals(ByteBuffer.wrap(magic));
+  }
+
+  /**
+   * Whether an open file starts with the given magic, leaving its position as it was.
+   * It reads by position, so the file must be seekable.
+   */
+  static boolean hasMagic(final FileChannel channel, final byte[] magic) throws IOException {
+    final ByteBuffer head = ByteBuffer.allocate(magic.length);
+    while (head.hasRemaining() && channel.read(head, head.position()) > 0);
+    return !head.hasRemaining() && head.flip().equals(ByteBuffer.wrap(magic));
+  }
+
+  /**
+   * Read exactly size bytes of a file following its magic and version.
+   *
+   * @param channel the file, positioned at its start; left positioned after the header
+   * @param magic the expected magic
+   * @param size the number of bytes after the magic and version to read
+   * @return the header contents, ready to be read
+   * @throws IOException if the file is short, of another kind, or an unsupported version
+   */
+  static ByteBuffer readHeader(final FileChannel channel, final byte[] magic, final int size) throws IOException {
+    final ByteBuffer header = ByteBuffer.allocate(MAGIC_BYTES + size);
+    while (header.hasRemaining()) {
+      if (channel.read(header) < 0) throw new IOException("truncated " + new String(magic) + " file");
+    }
+    return checkHeader(header.flip(), magic, size);
+  }
+
+  /**
+   * Check the magic and version at the start of a buffer, as readHeader does for files.
+   *
+   * @param buf the encoding, positioned at its magic; left positioned after the version
+   * @param magic the expected magic
+   * @param size the least number of bytes there must be after the magic and version
+   * @return buf
+   * @throws IOException if buf is short, of another kind, or an unsupported version
+   */
+  static ByteBuffer checkHeader(final ByteBuffer buf, final byte[] magic, final int size) throws IOException {
+    if (buf.remaining() < MAGIC_BYTES + size) throw new IOException("truncated " + new String(magic) + " encoding");
+
+    final byte[] found = new byte[magic.length];
+    buf.get(found);
+    if (!ByteBuffer.wrap(found).equals(ByteBuffer.wrap(magic))) {
+      throw new IOException("not a " + new String(magic) + " encoding");
+    }
+    final byte version = buf.get();
+    if (version == 1) {
+      // version 1 keys were derived from only 48 bits of the password's hash
+      throw new IOException(new String(magic) + " version 1 is no longer supported, regenerate the file");
+    }
+    if (version != VERSION) {
+      throw new IOException("unsupported " + new String(magic) + " version " + version);
+    }
+    return buf;
+  }
+
+  /**
+   * Start a header of the given size with its magic and version.
+   */
+  static ByteBuffer newHeader(final byte[] magic, final int size) {
+    return ByteBuffer.allocate(MAGIC_BYTES + size).put(magic).put(VERSION);
+  }
+
+  /**
+   * Write an integer in [0, 2^256) as exactly 32 unsigned big-endian bytes.
+   */
+  static ByteBuffer putScalar(final ByteBuffer buf, final BigInteger v) {
+    if (v.signum() < 0 || v.bitLength() > SCALAR_BYTES << 3) {
+      throw new IllegalArgumentException("Scalar out of range.");
+    }
+    final byte[] bytes = v.toByteArray();
+    final int len = Math.min(bytes.length, SCALAR_BYTES); // drop a sign byte
+    for (int i = len; i < SCALAR_BYTES; i++) buf.put((byte) 0);
+    return buf.put(bytes, bytes.length - len, len);
+  }
+
+  static BigInteger getScalar(final ByteBuffer buf) {
+    final byte[] bytes = new byte[SCALAR_BYTES];
+    buf.get(bytes);
+    return new BigInteger(1, bytes);
+  }
+
+  static ByteBuffer putPoint(final ByteBuffer buf, final Edwards.Point P) {
+    return putScalar(buf, P.y).put((byte) (P.x.testBit(0) ? 1 : 0));
+  }
+
+  /**
+   * Read a point, decompressing it through the public key cache when asked to.
+   */
+  static Edwards.Point getPoint(final ByteBuffer buf, final boolean cached) throws IOException {
+    final BigInteger y = getScalar(buf);
+    final byte x_lsb = buf.get();
+    if ((x_lsb & ~1) != 0) throw new IOException("malformed point encoding");
+    return cached ? Edwards.KEY_CACHE.get(y, x_lsb == 1) : Edwards.getPoint(y, x_lsb == 1);
+  }
+}
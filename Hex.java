@@ -0,0 +1,156 @@
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Table driven lowercase hex encoding and decoding, over byte arrays so
+ * large blocks are converted without any per-byte formatting or parsing.
+ */
+final class Hex {
+  /**
+   * Both hex digits of every byte value, high digit first.
+   */
+  private static final byte[] ENCODE = new byte[512];
+
+  /**
+   * The value of every hex digit (either case), -1 for anything else.
+   */
+  private static final byte[] DECODE = new byte[256];
+
+  static {
+    final byte[] digits = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    for (int b = 0; b < 256; b++) {
+      ENCODE[b << 1] = digits[b >>> 4];
+      ENCODE[(b << 1) + 1] = digits[b & 0xf];
+    }
+
+    Arrays.fill(DECODE, (byte) -1);
+    for (int i = 0; i < 16; i++) {
+      DECODE[digits[i]] = (byte) i;
+      DECODE[Character.toUpperCase(digits[i])] = (byte) i;
+    }
+  }
+
+  private Hex() {}
+
+  /**
+   * Encode len bytes of in, starting at pos, into out at out_pos.
+   *
+   * @return the number of hex digits written (2 * len)
+   */
+  static int encode(final byte[] in, final int pos, final int len, final byte[] out, final int out_pos) {
+    for (int i = 0; i < len; i++) {
+      final int b = (in[pos + i] & 0xff) << 1;
+      out[out_pos + (i << 1)] = ENCODE[b];
+      out[out_pos + (i << 1) + 1] = ENCODE[b + 1];
+    }
+    return len << 1;
+  }
+
+  static String encode(final byte[] in) {
+    final byte[] out = new byte[in.length << 1];
+    encode(in, 0, in.length, out, 0);
+    return new String(out, StandardCharsets.US_ASCII);
+  }
+
+  /**
+   * Decode len hex digits of in, starting at pos, into out at out_pos.
+   *
+   * @return the number of bytes decoded (len / 2)
+   * @throws IOException if len is odd or a character is not a hex digit
+   */
+  static int decode(final byte[] in, final int pos, final int len, final byte[] out, final int out_pos) throws IOException {
+    if ((len & 1) != 0) throw new IOException("odd length hex string");
+    for (int i = 0; i < len; i += 2) {
+      final int high = DECODE[in[pos + i] & 0xff];
+      final int low = DECODE[in[pos + i + 1] & 0xff];
+      if ((high | low) < 0) throw new IOException("invalid hex digit");
+      out[out_pos + (i >> 1)] = (byte) ((high << 4) | low);
+    }
+    return len >> 1;
+  }
+
+  static byte[] decode(final String in) throws IOException {
+    final byte[] hex = in.getBytes(StandardCharsets.US_ASCII);
+    final byte[] out = new byte[hex.length >> 1];
+    decode(hex, 0, hex.length, out, 0);
+    return out;
+  }
+
+  /**
+   * Read and decode up to out.length bytes of hex, stopping at the end of the line.
+   *
+   * @param hex scratch space of at least 2 * out.length bytes
+   * @return the number of bytes decoded, 0 once the line is done
+   */
+  static int read(final InputStream in, final byte[] hex, final byte[] out) throws IOException {
+    int len = in.readNBytes(hex, 0, out.length << 1);
+    for (int i = 0; i < len; i++) {
+      if (hex[i] == '\n' || hex[i] == '\r') len = i;
+    }
+    return decode(hex, 0, len, out, 0);
+  }
+
+  /**
+   * Buffered hex (and plain text) output to a channel, in large blocks.
+   * Nothing reaches the channel before the buffer fills or flush is called.
+   */
+  static final class Writer implements Flushable {
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+
+    Writer(final WritableByteChannel channel) {
+      this(channel, 1 << 16);
+    }
+
+    Writer(final WritableByteChannel channel, final int capacity) {
+      if (capacity < 2) throw new IllegalArgumentException("Capacity must hold a hex digit pair.");
+      this.channel = channel;
+      this.buffer = ByteBuffer.allocate(capacity & ~1);
+    }
+
+    /**
+     * Write len bytes of data, starting at pos, as hex.
+     */
+    Writer hex(final byte[] data, int pos, int len) throws IOException {
+      while (len > 0) {
+        if (buffer.remaining() < 2) drain();
+        final int n = Math.min(len, buffer.remaining() >> 1);
+        buffer.position(buffer.position() + encode(data, pos, n, buffer.array(), buffer.position()));
+        pos += n;
+        len -= n;
+      }
+      return this;
+    }
+
+    Writer hex(final byte[] data) throws IOException {
+      return hex(data, 0, data.length);
+    }
+
+    Writer text(final String s) throws IOException {
+      final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+      for (int pos = 0; pos < bytes.length; ) {
+        if (!buffer.hasRemaining()) drain();
+        final int n = Math.min(bytes.length - pos, buffer.remaining());
+        buffer.put(bytes, pos, n);
+        pos += n;
+      }
+      return this;
+    }
+
+    private void drain() throws IOException {
+      buffer.flip();
+      while (buffer.hasRemaining()) channel.write(buffer);
+      buffer.clear();
+    }
+
+    @Override
+    public void flush() throws IOException {
+      drain();
+    }
+  }
+}
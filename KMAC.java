@@ -0,0 +1,125 @@
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * KMAC128/256 and KMACXOF128/256 of NIST SP 800-185, on cSHAKE.
+ *
+ *   KMAC(K, X, L, S) = cSHAKE(bytepad(encode_string(K), rate) || X || right_encode(L), L, "KMAC", S)
+ *
+ * Everything up to X is fixed per key, so it is absorbed once, when the KMAC is made,
+ * and every message starts from a copy of that state. Messages are absorbed as they
+ * stream in, with nothing concatenated.
+ */
+public final class KMAC {
+  private static final byte[] N = "KMAC".getBytes();
+
+  /**
+   * Shared KMACs for recurring keys, sized with -Dkmac.keycache=<keys>
+   */
+  public static final Cache KEY_CACHE = new Cache(Integer.getInteger("kmac.keycache", 64));
+
+  /**
+   * The sponge with the customization and key blocks absorbed, never absorbed into itself
+   */
+  private final SHA3SHAKE keyed;
+
+  /**
+   * @param sec the security level, 128 or 256
+   * @param K the key
+   * @param S the customization string
+   */
+  public KMAC(final int sec, final byte[] K, final byte[] S) {
+    if (sec != 128 && sec != 256) throw new IllegalArgumentException("Invalid security level: " + sec);
+    this.keyed = new SHA3SHAKE();
+    this.keyed.init(sec, N, S);
+    this.keyed.absorbBytepad(SHA3SHAKE.encodeString(K));
+  }
+
+  /**
+   * Start a MAC: set sponge to the keyed state, ready for the message to be absorbed.
+   *
+   * @param sponge any sponge, reused to avoid allocation
+   * @return sponge
+   */
+  public SHA3SHAKE begin(final SHA3SHAKE sponge) {
+    return sponge.set(this.keyed);
+  }
+
+  /**
+   * Finish a MAC begun with begin once the whole message is absorbed.
+   *
+   * @param sponge the sponge from begin
+   * @param out output buffer, of at least len bytes
+   * @param len output length in bytes
+   * @param xof whether to compute KMACXOF, whose output does not depend on len
+   * @return the out buffer
+   */
+  public static byte[] finish(final SHA3SHAKE sponge, final byte[] out, final int len, final boolean xof) {
+    sponge.absorb(SHA3SHAKE.rightEncode(xof ? 0 : (long) len << 3));
+    return sponge.squeeze(out, 0, len);
+  }
+
+  /**
+   * KMAC of a whole message.
+   *
+   * @param X the message
+   * @param len output length in bytes
+   * @return the MAC
+   */
+  public byte[] mac(final byte[] X, final int len) {
+    final SHA3SHAKE sponge = begin(new SHA3SHAKE());
+    sponge.absorb(X);
+    return finish(sponge, new byte[len], len, false);
+  }
+
+  /**
+   * A bounded, thread-safe cache of KMACs by (security level, key, customization),
+   * least recently used first out, so recurring keys skip the key setup.
+   */
+  public static final class Cache {
+    private record Id(int sec, ByteBuffer K, ByteBuffer S) {}
+
+    private final LinkedHashMap<Id, KMAC> kmacs;
+
+    /**
+     * Create an empty cache.
+     *
+     * @param capacity the most keys the cache holds
+     */
+    public Cache(final int capacity) {
+      if (capacity < 1) throw new IllegalArgumentException("Invalid cache capacity.");
+      this.kmacs = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Id, KMAC> eldest) {
+          return size() > capacity;
+        }
+      };
+    }
+
+    /**
+     * Get the KMAC for a key, setting it up on a miss.
+     */
+    public KMAC get(final int sec, final byte[] K, final byte[] S) {
+      final Id id = new Id(sec, ByteBuffer.wrap(K.clone()), ByteBuffer.wrap(S.clone()));
+      synchronized (this) {
+        final KMAC kmac = this.kmacs.get(id);
+        if (kmac != null) return kmac;
+      }
+
+      final KMAC kmac = new KMAC(sec, K, S);
+      synchronized (this) {
+        final KMAC cached = this.kmacs.putIfAbsent(id, kmac);
+        return cached != null ? cached : kmac;
+      }
+    }
+
+    public synchronized int size() {
+      return this.kmacs.size();
+    }
+
+    public synchronized void clear() {
+      this.kmacs.clear();
+    }
+  }
+}
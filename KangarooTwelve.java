@@ -0,0 +1,204 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * KangarooTwelve (RFC 9861), a tree hash on TurboSHAKE128, whose leaves
+ * can be hashed on every core.
+ *
+ * S = M || C || length_encode(|C|) is split into 8192 byte chunks. When S is a
+ * single chunk the output is TurboSHAKE128(S, 0x07). Otherwise every chunk but
+ * the first is hashed to a 32 byte chaining value with TurboSHAKE128(chunk, 0x0B),
+ * and the output is
+ *
+ *   TurboSHAKE128(S_0 || 03 00 00 00 00 00 00 00 || CV_1 || ... || CV_n-1
+ *                 || length_encode(n - 1) || FF FF, 0x06)
+ *
+ * Chunks go through a bounded window at a time, so memory stays constant for any input.
+ */
+final class KangarooTwelve {
+  static final int CHUNK = 1 << 13;
+  private static final int CV_BYTES = 32;
+  private static final byte[] TREE_MARKER = { 3, 0, 0, 0, 0, 0, 0, 0 };
+  private static final byte[] TREE_END = { (byte) 0xFF, (byte) 0xFF };
+
+  /**
+   * The most chunks hashed per window before the final node absorbs their chaining values.
+   */
+  static final int WINDOW_CHUNKS = 1 << 13; // 64 MiB
+  /**
+   * The chunks read per call from a file that cannot be mapped.
+   */
+  static final int READ_CHUNKS = 1 << 7; // 1 MiB
+
+  private final byte[] custom;
+  private final ForkJoinPool pool;
+  private final byte[] cvs = new byte[WINDOW_CHUNKS * CV_BYTES];
+  /**
+   * S_0, then a partial chunk that is not yet a whole leaf
+   */
+  private final byte[] pending = new byte[CHUNK];
+  private int pending_len = 0;
+  /**
+   * The final node, null while all of S so far fits in S_0
+   */
+  private SHA3SHAKE root = null;
+  private long leaves = 0;
+
+  /**
+   * @param C the customization string
+   * @param pool the pool leaves are hashed on
+   */
+  KangarooTwelve(final byte[] C, final ForkJoinPool pool) {
+    this.custom = C.clone();
+    this.pool = pool;
+  }
+
+  /**
+   * Hash the whole of a file, mapping a regular file one window at a time,
+   * and reading anything else (a pipe, a device) a buffer at a time to its end.
+   */
+  KangarooTwelve update(final Path path) throws IOException {
+    try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+      if (Files.isRegularFile(path)) {
+        final long size = file.size();
+        final long window = (long) WINDOW_CHUNKS * CHUNK;
+        for (long pos = 0; pos < size; pos += window) {
+          update(file.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(window, size - pos)));
+        }
+      } else {
+        final ByteBuffer data = ByteBuffer.allocate(READ_CHUNKS * CHUNK);
+        while (file.read(data.clear()) >= 0) {
+          update(data.flip());
+        }
+      }
+    }
+    return this;
+  }
+
+  /**
+   * Hash the input in data, of any length.
+   */
+  KangarooTwelve update(final ByteBuffer data) {
+    // S_0 is kept until more input shows whether the tree is needed
+    if (this.root == null) {
+      fill(data);
+      if (!data.hasRemaining()) return this;
+
+      this.root = new SHA3SHAKE();
+      this.root.initTurbo(128, 0x06);
+      this.root.absorb(this.pending, 0, CHUNK);
+      this.root.absorb(TREE_MARKER);
+      this.pending_len = 0;
+    }
+
+    // complete the partial leaf first, then hash whole leaves straight from data
+    if (this.pending_len > 0) {
+      fill(data);
+      if (this.pending_len < CHUNK) return this;
+      leaves(ByteBuffer.wrap(this.pending));
+      this.pending_len = 0;
+    }
+    while (data.remaining() >= CHUNK) {
+      final int n = Math.min(data.remaining() / CHUNK, WINDOW_CHUNKS);
+      final int end = data.position() + n * CHUNK;
+      leaves(data.slice(data.position(), n * CHUNK));
+      data.position(end);
+    }
+    fill(data);
+    return this;
+  }
+
+  /**
+   * Finish the hash.
+   *
+   * @param L the output length in bits (a multiple of 8)
+   * @return the L / 8 byte output
+   */
+  byte[] digest(final int L) {
+    update(ByteBuffer.wrap(this.custom));
+    update(ByteBuffer.wrap(lengthEncode(this.custom.length)));
+
+    if (this.root == null) {
+      final SHA3SHAKE single = new SHA3SHAKE();
+      single.initTurbo(128, 0x07);
+      single.absorb(this.pending, 0, this.pending_len);
+      return single.squeeze(L >>> 3);
+    }
+
+    if (this.pending_len > 0) leaves(ByteBuffer.wrap(this.pending, 0, this.pending_len));
+    this.root.absorb(lengthEncode(this.leaves));
+    this.root.absorb(TREE_END);
+    return this.root.squeeze(L >>> 3);
+  }
+
+  /**
+   * length_encode(x) of RFC 9861: the big-endian encoding of x without leading zeros
+   * (none at all for 0), then its byte length.
+   */
+  static byte[] lengthEncode(final long x) {
+    final int n = (71 - Long.numberOfLeadingZeros(x)) >>> 3;
+    final byte[] out = new byte[n + 1];
+    for (int i = 0; i < n; i++) out[n - 1 - i] = (byte) (x >>> (i << 3));
+    out[n] = (byte) n;
+    return out;
+  }
+
+  /**
+   * Move as much of data as fits into the pending chunk.
+   */
+  private void fill(final ByteBuffer data) {
+    final int n = Math.min(CHUNK - this.pending_len, data.remaining());
+    data.get(this.pending, this.pending_len, n);
+    this.pending_len += n;
+  }
+
+  /**
+   * Hash the chunks of data (the last may be partial) to chaining values,
+   * and absorb them into the final node.
+   */
+  private void leaves(final ByteBuffer data) {
+    final int n = (data.remaining() + CHUNK - 1) / CHUNK;
+
+    // a task per run of leaves, a few per thread to even out the load
+    final int per_task = Math.max(1, n / (4 * this.pool.getParallelism()));
+    final List<Callable<Void>> tasks = new ArrayList<>();
+    for (int first = 0; first < n; first += per_task) {
+      final int from = first;
+      final int to = Math.min(n, first + per_task);
+      tasks.add(() -> {
+        final SHA3SHAKE leaf = new SHA3SHAKE();
+        for (int i = from; i < to; i++) {
+          final int start = data.position() + i * CHUNK;
+          leaf.initTurbo(128, 0x0B);
+          leaf.absorb(data.slice(start, Math.min(CHUNK, data.limit() - start)));
+          leaf.squeeze(this.cvs, i * CV_BYTES, CV_BYTES);
+        }
+        return null;
+      });
+    }
+
+    for (final Future<Void> task : this.pool.invokeAll(tasks)) {
+      try {
+        task.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException(e);
+      } catch (ExecutionException e) {
+        throw new IllegalStateException(e.getCause());
+      }
+    }
+
+    this.root.absorb(this.cvs, 0, n * CV_BYTES);
+    this.leaves += n;
+  }
+}
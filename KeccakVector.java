@@ -0,0 +1,166 @@
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorSpecies;
+
+import static jdk.incubator.vector.VectorOperators.AND_NOT;
+import static jdk.incubator.vector.VectorOperators.ROL;
+import static jdk.incubator.vector.VectorOperators.XOR;
+
+/**
+ * Keccak-f[1600] over many states at once on the Java Vector API (jdk.incubator.vector).
+ * SHA3SHAKE loads this class reflectively, so it is only used when the
+ * incubator module was added with --add-modules jdk.incubator.vector.
+ */
+final class KeccakVector implements SHA3SHAKE.MultiPermutation {
+  /**
+   * Many states at once, one per vector lane
+   */
+  private static final VectorSpecies<Long> STATES = LongVector.SPECIES_PREFERRED;
+  private static final int W = STATES.length();
+  /**
+   * Iota round constants, broadcast to every state
+   */
+  private static final LongVector[] ROUND_CONSTANTS = new LongVector[24];
+
+  static {
+    for (int i = 0; i < 24; i++) {
+      ROUND_CONSTANTS[i] = LongVector.broadcast(STATES, SHA3SHAKE.roundConstants[i]);
+    }
+  }
+
+  @Override
+  public int width() {
+    return W;
+  }
+
+  /**
+   * Scrambles width() interleaved states (lane i of state j at i * width() + j),
+   * with each lane of the sponge held in one vector across all the states.
+   */
+  @Override
+  public void permuteAll(final long[] st) {
+    assert st.length == 25 * W;
+
+    LongVector a00 = LongVector.fromArray(STATES, st, 0 * W);
+    LongVector a01 = LongVector.fromArray(STATES, st, 1 * W);
+    LongVector a02 = LongVector.fromArray(STATES, st, 2 * W);
+    LongVector a03 = LongVector.fromArray(STATES, st, 3 * W);
+    LongVector a04 = LongVector.fromArray(STATES, st, 4 * W);
+    LongVector a05 = LongVector.fromArray(STATES, st, 5 * W);
+    LongVector a06 = LongVector.fromArray(STATES, st, 6 * W);
+    LongVector a07 = LongVector.fromArray(STATES, st, 7 * W);
+    LongVector a08 = LongVector.fromArray(STATES, st, 8 * W);
+    LongVector a09 = LongVector.fromArray(STATES, st, 9 * W);
+    LongVector a10 = LongVector.fromArray(STATES, st, 10 * W);
+    LongVector a11 = LongVector.fromArray(STATES, st, 11 * W);
+    LongVector a12 = LongVector.fromArray(STATES, st, 12 * W);
+    LongVector a13 = LongVector.fromArray(STATES, st, 13 * W);
+    LongVector a14 = LongVector.fromArray(STATES, st, 14 * W);
+    LongVector a15 = LongVector.fromArray(STATES, st, 15 * W);
+    LongVector a16 = LongVector.fromArray(STATES, st, 16 * W);
+    LongVector a17 = LongVector.fromArray(STATES, st, 17 * W);
+    LongVector a18 = LongVector.fromArray(STATES, st, 18 * W);
+    LongVector a19 = LongVector.fromArray(STATES, st, 19 * W);
+    LongVector a20 = LongVector.fromArray(STATES, st, 20 * W);
+    LongVector a21 = LongVector.fromArray(STATES, st, 21 * W);
+    LongVector a22 = LongVector.fromArray(STATES, st, 22 * W);
+    LongVector a23 = LongVector.fromArray(STATES, st, 23 * W);
+    LongVector a24 = LongVector.fromArray(STATES, st, 24 * W);
+
+    for (int round = 0; round < 24; round++) {
+      // Theta
+      final LongVector c0 = a00.lanewise(XOR, a05).lanewise(XOR, a10).lanewise(XOR, a15).lanewise(XOR, a20);
+      final LongVector c1 = a01.lanewise(XOR, a06).lanewise(XOR, a11).lanewise(XOR, a16).lanewise(XOR, a21);
+      final LongVector c2 = a02.lanewise(XOR, a07).lanewise(XOR, a12).lanewise(XOR, a17).lanewise(XOR, a22);
+      final LongVector c3 = a03.lanewise(XOR, a08).lanewise(XOR, a13).lanewise(XOR, a18).lanewise(XOR, a23);
+      final LongVector c4 = a04.lanewise(XOR, a09).lanewise(XOR, a14).lanewise(XOR, a19).lanewise(XOR, a24);
+      final LongVector d0 = c4.lanewise(XOR, c1.lanewise(ROL, 1));
+      final LongVector d1 = c0.lanewise(XOR, c2.lanewise(ROL, 1));
+      final LongVector d2 = c1.lanewise(XOR, c3.lanewise(ROL, 1));
+      final LongVector d3 = c2.lanewise(XOR, c4.lanewise(ROL, 1));
+      final LongVector d4 = c3.lanewise(XOR, c0.lanewise(ROL, 1));
+
+      // Rho + Pi
+      final LongVector b00 = a00.lanewise(XOR, d0);
+      final LongVector b10 = a01.lanewise(XOR, d1).lanewise(ROL, 1);
+      final LongVector b20 = a02.lanewise(XOR, d2).lanewise(ROL, 62);
+      final LongVector b05 = a03.lanewise(XOR, d3).lanewise(ROL, 28);
+      final LongVector b15 = a04.lanewise(XOR, d4).lanewise(ROL, 27);
+      final LongVector b16 = a05.lanewise(XOR, d0).lanewise(ROL, 36);
+      final LongVector b01 = a06.lanewise(XOR, d1).lanewise(ROL, 44);
+      final LongVector b11 = a07.lanewise(XOR, d2).lanewise(ROL, 6);
+      final LongVector b21 = a08.lanewise(XOR, d3).lanewise(ROL, 55);
+      final LongVector b06 = a09.lanewise(XOR, d4).lanewise(ROL, 20);
+      final LongVector b07 = a10.lanewise(XOR, d0).lanewise(ROL, 3);
+      final LongVector b17 = a11.lanewise(XOR, d1).lanewise(ROL, 10);
+      final LongVector b02 = a12.lanewise(XOR, d2).lanewise(ROL, 43);
+      final LongVector b12 = a13.lanewise(XOR, d3).lanewise(ROL, 25);
+      final LongVector b22 = a14.lanewise(XOR, d4).lanewise(ROL, 39);
+      final LongVector b23 = a15.lanewise(XOR, d0).lanewise(ROL, 41);
+      final LongVector b08 = a16.lanewise(XOR, d1).lanewise(ROL, 45);
+      final LongVector b18 = a17.lanewise(XOR, d2).lanewise(ROL, 15);
+      final LongVector b03 = a18.lanewise(XOR, d3).lanewise(ROL, 21);
+      final LongVector b13 = a19.lanewise(XOR, d4).lanewise(ROL, 8);
+      final LongVector b14 = a20.lanewise(XOR, d0).lanewise(ROL, 18);
+      final LongVector b24 = a21.lanewise(XOR, d1).lanewise(ROL, 2);
+      final LongVector b09 = a22.lanewise(XOR, d2).lanewise(ROL, 61);
+      final LongVector b19 = a23.lanewise(XOR, d3).lanewise(ROL, 56);
+      final LongVector b04 = a24.lanewise(XOR, d4).lanewise(ROL, 14);
+
+      // Chi
+      a00 = b00.lanewise(XOR, b02.lanewise(AND_NOT, b01));
+      a01 = b01.lanewise(XOR, b03.lanewise(AND_NOT, b02));
+      a02 = b02.lanewise(XOR, b04.lanewise(AND_NOT, b03));
+      a03 = b03.lanewise(XOR, b00.lanewise(AND_NOT, b04));
+      a04 = b04.lanewise(XOR, b01.lanewise(AND_NOT, b00));
+      a05 = b05.lanewise(XOR, b07.lanewise(AND_NOT, b06));
+      a06 = b06.lanewise(XOR, b08.lanewise(AND_NOT, b07));
+      a07 = b07.lanewise(XOR, b09.lanewise(AND_NOT, b08));
+      a08 = b08.lanewise(XOR, b05.lanewise(AND_NOT, b09));
+      a09 = b09.lanewise(XOR, b06.lanewise(AND_NOT, b05));
+      a10 = b10.lanewise(XOR, b12.lanewise(AND_NOT, b11));
+      a11 = b11.lanewise(XOR, b13.lanewise(AND_NOT, b12));
+      a12 = b12.lanewise(XOR, b14.lanewise(AND_NOT, b13));
+      a13 = b13.lanewise(XOR, b10.lanewise(AND_NOT, b14));
+      a14 = b14.lanewise(XOR, b11.lanewise(AND_NOT, b10));
+      a15 = b15.lanewise(XOR, b17.lanewise(AND_NOT, b16));
+      a16 = b16.lanewise(XOR, b18.lanewise(AND_NOT, b17));
+      a17 = b17.lanewise(XOR, b19.lanewise(AND_NOT, b18));
+      a18 = b18.lanewise(XOR, b15.lanewise(AND_NOT, b19));
+      a19 = b19.lanewise(XOR, b16.lanewise(AND_NOT, b15));
+      a20 = b20.lanewise(XOR, b22.lanewise(AND_NOT, b21));
+      a21 = b21.lanewise(XOR, b23.lanewise(AND_NOT, b22));
+      a22 = b22.lanewise(XOR, b24.lanewise(AND_NOT, b23));
+      a23 = b23.lanewise(XOR, b20.lanewise(AND_NOT, b24));
+      a24 = b24.lanewise(XOR, b21.lanewise(AND_NOT, b20));
+
+      // Iota
+      a00 = a00.lanewise(XOR, ROUND_CONSTANTS[round]);
+    }
+
+    a00.intoArray(st, 0 * W);
+    a01.intoArray(st, 1 * W);
+    a02.intoArray(st, 2 * W);
+    a03.intoArray(st, 3 * W);
+    a04.intoArray(st, 4 * W);
+    a05.intoArray(st, 5 * W);
+    a06.intoArray(st, 6 * W);
+    a07.intoArray(st, 7 * W);
+    a08.intoArray(st, 8 * W);
+    a09.intoArray(st, 9 * W);
+    a10.intoArray(st, 10 * W);
+    a11.intoArray(st, 11 * W);
+    a12.intoArray(st, 12 * W);
+    a13.intoArray(st, 13 * W);
+    a14.intoArray(st, 14 * W);
+    a15.intoArray(st, 15 * W);
+    a16.intoArray(st, 16 * W);
+    a17.intoArray(st, 17 * W);
+    a18.intoArray(st, 18 * W);
+    a19.intoArray(st, 19 * W);
+    a20.intoArray(st, 20 * W);
+    a21.intoArray(st, 21 * W);
+    a22.intoArray(st, 22 * W);
+    a23.intoArray(st, 23 * W);
+    a24.intoArray(st, 24 * W);
+  }
+}
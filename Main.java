@@ -1,13 +1,34 @@
+import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.InputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.math.BigInteger;
 import java.security.SecureRandom;
 import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 public class Main {
   public static void main(String[] args) throws IOException {
@@ -18,14 +39,19 @@ public class Main {
 
     switch (args[0]) {
       case "sha3" -> sha3(args);
+      case "parallel-hash" -> parallel_hash(args);
+      case "k12" -> k12(args);
       case "shake-random" -> shake_random(args);
       case "shake-encrypt" -> shake_encrypt(args);
-      case "mac" -> mac(args);
+      case "shake-ctr-encrypt" -> shake_ctr_encrypt(args);
+      case "shake-ctr-decrypt" -> shake_ctr_decrypt(args);
+      case "mac", "kmac" -> mac(args);
       case "ec-keygen" -> ec_keygen(args);
       case "ec-encrypt" -> ec_encrypt(args);
       case "ec-decrypt" -> ec_decrypt(args);
       case "ec-sign" -> ec_sign(args);
       case "ec-verify" -> ec_verify(args);
+      case "serve" -> serve(args);
       default -> {
         System.err.println(USAGE);
         System.exit(1);
@@ -33,15 +59,16 @@ public class Main {
     }
   }
 
-  static final String SHA3_USAGE = "usage: sha3shake sha3 <SECURITY_LEVEL_BITS> <FILE>\n";
+  static final String SHA3_USAGE =
+      "usage: sha3shake sha3 <SECURITY_LEVEL_BITS> [-j <JOBS>] [--files-from <LIST>] <FILE|DIR>...\n"
+    + "usage: sha3shake sha3 <SECURITY_LEVEL_BITS> [-j <JOBS>] --check <MANIFEST>\n";
   static void sha3(String[] args) throws IOException {
-    if (args.length != 3) {
+    if (args.length < 3) {
         System.err.printf(SHA3_USAGE);
         System.exit(1);
     }
 
     final int sec = Integer.parseInt(args[1]);
-    final String file_name = args[2];
 
     if (sec != 224
      && sec != 256
@@ -51,21 +78,237 @@ public class Main {
       System.exit(1);
     }
 
-    final File file = new File(file_name);
-    final byte[] contents = Files.readAllBytes(file.toPath());
+    int jobs = Runtime.getRuntime().availableProcessors();
+    String manifest_name = null;
+    final List<String> file_names = new ArrayList<>();
+    for (int i = 2; i < args.length; i++) {
+      final boolean is_option = args[i].equals("-j") || args[i].equals("--check") || args[i].equals("--files-from");
+      if (is_option && i + 1 == args.length) {
+        System.err.printf(SHA3_USAGE);
+        System.exit(1);
+      }
+      if (args[i].equals("-j")) {
+        jobs = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("--check")) {
+        manifest_name = args[++i];
+      } else if (args[i].equals("--files-from")) {
+        for (final String line : Files.readAllLines(Path.of(args[++i]))) {
+          if (!line.isEmpty()) file_names.add(line);
+        }
+      } else {
+        addFiles(file_names, Path.of(args[i]));
+      }
+    }
+
+    if (jobs < 1 || (manifest_name == null) == file_names.isEmpty()) {
+      System.err.printf(SHA3_USAGE);
+      System.exit(1);
+    }
+
+    // with --check the file names (and expected digests) come from the manifest
+    final List<String> expected = new ArrayList<>();
+    if (manifest_name != null) {
+      for (final String line : Files.readAllLines(Path.of(manifest_name))) {
+        if (line.isBlank()) continue;
+        final int name_pos = manifestNamePos(line, sec >>> 2);
+        if (name_pos < 0) {
+          System.err.printf("sha3: %s: improperly formatted line: '%s'\n", manifest_name, line);
+          System.exit(1);
+        }
+        expected.add(line.substring(0, sec >>> 2).toLowerCase());
+        file_names.add(line.substring(name_pos));
+      }
+    }
+
+    // Hash every file on its own sponge, printing in input order as results complete.
+    final ExecutorService pool = Executors.newFixedThreadPool(Math.min(jobs, Math.max(file_names.size(), 1)));
+    final List<Future<byte[]>> digests = new ArrayList<>(file_names.size());
+    for (final String file_name : file_names) {
+      digests.add(pool.submit(() -> {
+        final SHA3SHAKE sha = new SHA3SHAKE();
+        sha.init(sec);
+        absorbFile(sha, new File(file_name));
+        return sha.digest();
+      }));
+    }
+    pool.shutdown();
+
+    final Hex.Writer stdout = stdout();
+    boolean failed = false;
+    for (int i = 0; i < file_names.size(); i++) {
+      final String file_name = file_names.get(i);
+      final byte[] out;
+      try {
+        out = digests.get(i).get();
+      } catch (ExecutionException e) {
+        System.err.printf("sha3: %s: %s\n", file_name, e.getCause());
+        failed = true;
+        continue;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException(e);
+      }
+
+      if (manifest_name == null) {
+        stdout.hex(out).text(" " + file_name + "\n");
+      } else if (Hex.encode(out).equals(expected.get(i))) {
+        stdout.text(file_name + ": OK\n");
+      } else {
+        stdout.text(file_name + ": FAILED\n");
+        failed = true;
+      }
+    }
+    stdout.flush();
+
+    if (failed) System.exit(1);
+  }
+
+  /**
+   * Where the file name starts on a manifest line: after the hex digest field,
+   * hex_len digits wide, and the first separator following it. That is the
+   * "  " (text) or " *" (binary) of sha3sum style manifests, or the single
+   * space sha3 prints, so the name itself may start with a space or a '*'
+   * only in the sha3sum styles.
+   *
+   * @return the index of the file name, or -1 if the line is malformed
+   */
+  static int manifestNamePos(final String line, final int hex_len) {
+    if (line.length() < hex_len + 2) return -1;
+    for (int i = 0; i < hex_len; i++) {
+      if (Character.digit(line.charAt(i), 16) < 0) return -1;
+    }
+    if (line.startsWith("  ", hex_len) || line.startsWith(" *", hex_len)) {
+      return line.length() > hex_len + 2 ? hex_len + 2 : -1;
+    }
+    return line.charAt(hex_len) == ' ' ? hex_len + 1 : -1;
+  }
+
+  static final String PARALLEL_HASH_USAGE =
+      "usage: sha3shake parallel-hash <SECURITY_LEVEL_BITS> [-b <BLOCK_BYTES>] [-j <JOBS>] [-s <CUSTOM>] [-l <LEN_BITS>] [--xof] <FILE|DIR>...\n";
+  static void parallel_hash(String[] args) throws IOException {
+    if (args.length < 3) {
+        System.err.printf(PARALLEL_HASH_USAGE);
+        System.exit(1);
+    }
+
+    final int sec = Integer.parseInt(args[1]);
+    if (sec != 128 && sec != 256) {
+      System.err.printf("SECURITY_LEVEL_BITS, must be 128 or 256, found: '%s'", sec);
+      System.exit(1);
+    }
+
+    int block = 1 << 13;
+    int jobs = Runtime.getRuntime().availableProcessors();
+    String custom = "";
+    int len = sec << 1;
+    boolean xof = false;
+    final List<String> file_names = new ArrayList<>();
+    for (int i = 2; i < args.length; i++) {
+      final boolean is_option = args[i].equals("-b") || args[i].equals("-j") || args[i].equals("-s") || args[i].equals("-l");
+      if (is_option && i + 1 == args.length) {
+        System.err.printf(PARALLEL_HASH_USAGE);
+        System.exit(1);
+      }
+      if (args[i].equals("-b")) {
+        block = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-j")) {
+        jobs = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-s")) {
+        custom = args[++i];
+      } else if (args[i].equals("-l")) {
+        len = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("--xof")) {
+        xof = true;
+      } else {
+        addFiles(file_names, Path.of(args[i]));
+      }
+    }
+
+    if (block < 1 || jobs < 1 || len < 0 || (len & 0b111) != 0 || file_names.isEmpty()) {
+      System.err.printf(PARALLEL_HASH_USAGE);
+      System.exit(1);
+    }
 
-    final byte[] out = new byte[sec >> 3];
+    // Files one after another, the leaves of each on every core.
+    final ForkJoinPool pool = new ForkJoinPool(jobs);
+    final Hex.Writer stdout = stdout();
+    try {
+      for (final String file_name : file_names) {
+        final ParallelHash hash = new ParallelHash(sec, block, custom.getBytes(), pool).update(Path.of(file_name));
+        stdout.hex(hash.digest(len, xof)).text(" " + file_name + "\n");
+      }
+    } finally {
+      stdout.flush();
+      pool.shutdown();
+    }
+  }
+
+  static final String K12_USAGE =
+      "usage: sha3shake k12 [-j <JOBS>] [-s <CUSTOM>] [-l <LEN_BITS>] <FILE|DIR>...\n";
+  static void k12(String[] args) throws IOException {
+    if (args.length < 2) {
+        System.err.printf(K12_USAGE);
+        System.exit(1);
+    }
 
-    SHA3SHAKE.SHA3(sec, contents, out);
+    int jobs = Runtime.getRuntime().availableProcessors();
+    String custom = "";
+    int len = 256;
+    final List<String> file_names = new ArrayList<>();
+    for (int i = 1; i < args.length; i++) {
+      final boolean is_option = args[i].equals("-j") || args[i].equals("-s") || args[i].equals("-l");
+      if (is_option && i + 1 == args.length) {
+        System.err.printf(K12_USAGE);
+        System.exit(1);
+      }
+      if (args[i].equals("-j")) {
+        jobs = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-s")) {
+        custom = args[++i];
+      } else if (args[i].equals("-l")) {
+        len = Integer.parseInt(args[++i]);
+      } else {
+        addFiles(file_names, Path.of(args[i]));
+      }
+    }
 
-    for (byte b : out) {
-      System.out.printf("%02x", b);
+    if (jobs < 1 || len < 0 || (len & 0b111) != 0 || file_names.isEmpty()) {
+      System.err.printf(K12_USAGE);
+      System.exit(1);
+    }
+
+    // Files one after another, the leaves of each on every core.
+    final ForkJoinPool pool = new ForkJoinPool(jobs);
+    final Hex.Writer stdout = stdout();
+    try {
+      for (final String file_name : file_names) {
+        final KangarooTwelve hash = new KangarooTwelve(custom.getBytes(), pool).update(Path.of(file_name));
+        stdout.hex(hash.digest(len)).text(" " + file_name + "\n");
+      }
+    } finally {
+      stdout.flush();
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Add a file, or every regular file under a directory in a stable sorted order.
+   *
+   * @param file_names the list to add to
+   * @param path a file or directory
+   */
+  static void addFiles(final List<String> file_names, final Path path) throws IOException {
+    if (!Files.isDirectory(path)) {
+      file_names.add(path.toString());
+      return;
+    }
+    try (Stream<Path> walk = Files.walk(path)) {
+      walk.filter(Files::isRegularFile).map(Path::toString).sorted().forEachOrdered(file_names::add);
     }
-    System.out.printf(" %s\n", file_name);
   }
 
   static final String SHAKE_RANDOM_USAGE = "usage: sha3shake shake-random <SECURITY_LEVEL_BITS> <SEED> <LEN>\n";
-  static void shake_random(String[] args) {
+  static void shake_random(String[] args) throws IOException {
     if (args.length != 4) {
         System.err.printf(SHAKE_RANDOM_USAGE);
         System.exit(1);
@@ -73,49 +316,93 @@ public class Main {
 
     final int sec = Integer.parseInt(args[1]);
     final byte[] seed = args[2].getBytes();
-    final int len = Integer.parseInt(args[3]);
-    final byte[] out = new byte[len];
+    final long len = Long.parseLong(args[3]);
 
     if (sec != 128 && sec != 256) {
       System.err.printf("SECURITY_LEVEL_BITS, must be 128 or 256, found: '%s'", sec);
       System.exit(1);
     }
 
-    SHA3SHAKE.SHAKE(sec, seed, out.length << 3, out);
-
-    for (byte b : out) {
-      System.out.printf("%02x", b);
+    // Squeeze and print a chunk at a time, so LEN is not bounded by the heap.
+    final ShakeStream shake = new ShakeStream(sec, seed);
+    final Hex.Writer stdout = stdout();
+    final byte[] out = new byte[STREAM_CHUNK];
+    for (long left = len; left > 0; left -= out.length) {
+      final int n = (int) Math.min(left, out.length);
+      stdout.hex(out, 0, shake.read(out, 0, n));
     }
+    stdout.flush();
   }
 
-  static final String MAC_USAGE = "usage: sha3shake mac <SECURITY_LEVEL_BITS> <PASSWORD> <LEN> <FILE>\n";
+  static final String MAC_USAGE =
+      "usage: sha3shake mac <SECURITY_LEVEL_BITS> <KEY> <LEN> [-s <CUSTOM>] [--xof] <FILE>...\n"
+    + "usage: sha3shake mac <SECURITY_LEVEL_BITS> <KEY> <LEN> --shake <FILE>...\n";
   static void mac(String[] args) throws IOException {
-    if (args.length != 5) {
+    if (args.length < 5) {
         System.err.printf(MAC_USAGE);
         System.exit(1);
     }
 
     final int sec = Integer.parseInt(args[1]);
-    final String password = args[2];
+    final String key = args[2];
     final int len = Integer.parseInt(args[3]);
-    final String msg_file_name = args[4];
 
-    final File msg_file = new File(msg_file_name);
-    final byte[] msg = Files.readAllBytes(msg_file.toPath());
+    String custom = null;
+    boolean xof = false;
+    boolean shake = false;
+    final List<String> file_names = new ArrayList<>();
+    for (int i = 4; i < args.length; i++) {
+      if (args[i].equals("-s") && i + 1 == args.length) {
+        System.err.printf(MAC_USAGE);
+        System.exit(1);
+      }
+      if (args[i].equals("-s")) {
+        custom = args[++i];
+      } else if (args[i].equals("--xof")) {
+        xof = true;
+      } else if (args[i].equals("--shake")) {
+        shake = true;
+      } else {
+        file_names.add(args[i]);
+      }
+    }
+
+    if ((sec != 128 && sec != 256) || len < 0 || (len & 0b111) != 0 || file_names.isEmpty()
+        || (shake && (custom != null || xof))) {
+      System.err.printf(MAC_USAGE);
+      System.exit(1);
+    }
 
-    SHA3SHAKE shake = new SHA3SHAKE();
-    shake.init(sec, true);
-    shake.absorb(password.getBytes());
-    shake.absorb(msg);
-    final byte[] mac = shake.squeeze(len >> 3);
+    // The key is set up once, each file starts from a copy of the keyed sponge:
+    // KMAC, or with --shake the original SHAKE(key || m).
+    final KMAC kmac = shake ? null : new KMAC(sec, key.getBytes(), custom == null ? new byte[0] : custom.getBytes());
+    final SHA3SHAKE keyed = new SHA3SHAKE();
+    if (shake) {
+      keyed.init(sec, true);
+      keyed.absorb(key.getBytes());
+    }
 
-    for (final byte b : mac) System.out.printf("%02x", b);
-    System.out.println();
+    final Hex.Writer stdout = stdout();
+    final SHA3SHAKE sponge = new SHA3SHAKE();
+    final byte[] mac = new byte[len >> 3];
+    for (final String file_name : file_names) {
+      if (shake) {
+        absorbFile(sponge.set(keyed), new File(file_name));
+        sponge.squeeze(mac, mac.length);
+      } else {
+        absorbFile(kmac.begin(sponge), new File(file_name));
+        KMAC.finish(sponge, mac, mac.length, xof);
+      }
+      stdout.hex(mac).text(" " + file_name + "\n");
+    }
+    keyed.wipe();
+    sponge.wipe();
+    stdout.flush();
   }
 
-  static final String SHAKE_ENCRYPT_USAGE = "usage: sha3shake shake-encrypt <SECURITY_LEVEL_BITS> <KEY> <FILE>\n";
+  static final String SHAKE_ENCRYPT_USAGE = "usage: sha3shake shake-encrypt <SECURITY_LEVEL_BITS> <KEY> [FILE]\n";
   static void shake_encrypt(String[] args) throws IOException {
-    if (args.length != 4) {
+    if (args.length != 3 && args.length != 4) {
         System.err.printf(SHAKE_ENCRYPT_USAGE);
         System.exit(1);
     }
@@ -127,23 +414,153 @@ public class Main {
     }
 
     final String key = args[2];
-    final String file_name = args[3];
 
-    final File file = new File(file_name);
-    final byte[] contents = Files.readAllBytes(file.toPath());
+    // XOR FILE (or standard in) with the keystream a chunk at a time, to standard out.
+    final ShakeStream ke_stream = new ShakeStream(sec, key.getBytes());
+    try (InputStream in = args.length == 4 && !args[3].equals("-")
+           ? new FileInputStream(args[3]) : new FileInputStream(FileDescriptor.in);
+         FileOutputStream out = new FileOutputStream(FileDescriptor.out)) {
+      final byte[] contents = new byte[STREAM_CHUNK];
+      final byte[] ks = new byte[STREAM_CHUNK];
+      int n;
+      while ((n = in.readNBytes(contents, 0, contents.length)) > 0) {
+        ke_stream.read(ks, 0, n);
+        for (int i = 0; i < n; i++) {
+          contents[i] ^= ks[i];
+        }
+        out.write(contents, 0, n);
+      }
+    }
+  }
+
+  static final String SHAKE_CTR_ENCRYPT_USAGE =
+      "usage: sha3shake shake-ctr-encrypt [-j <JOBS>] <SECURITY_LEVEL_BITS> <KEY> <FILE>\n";
+  static void shake_ctr_encrypt(String[] args) throws IOException {
+    final String[] rest = withoutOption(args, JOBS_OPTION, 3, 3);
+    final int jobs = rest.length != args.length ? jobs(args[2]) : Runtime.getRuntime().availableProcessors();
+    args = rest;
+    if (args.length != 4 || jobs < 1) {
+        System.err.printf(SHAKE_CTR_ENCRYPT_USAGE);
+        System.exit(1);
+    }
+
+    final int sec = Integer.parseInt(args[1]);
+    if (sec != 128 && sec != 256) {
+      System.err.printf("SECURITY_LEVEL_BITS, must be 128 or 256, found: '%s'", sec);
+      System.exit(1);
+    }
 
-    final byte[] out = new byte[contents.length];
-    SHA3SHAKE.SHAKE(sec, key.getBytes(), contents.length, out);
+    final byte[] nonce = new byte[ShakeCTR.NONCE_BYTES];
+    new SecureRandom().nextBytes(nonce);
+    final ShakeCTR ctr = new ShakeCTR(sec, args[2].getBytes(), nonce);
+    final ForkJoinPool pool = new ForkJoinPool(jobs);
+    try (InputStream in = new FileInputStream(args[3]);
+         FileOutputStream out = new FileOutputStream(FileDescriptor.out)) {
+      final ByteBuffer header = Formats.newHeader(Formats.SHAKE_CTR, 2 + ShakeCTR.NONCE_BYTES);
+      header.put((byte) (sec >>> 3)).put((byte) ShakeCTR.BLOCK_SHIFT).put(nonce);
+      out.write(header.array());
+
+      // enough keystream blocks at once to keep every job busy
+      final byte[] c = new byte[ShakeCTR.BLOCK_BYTES * jobs];
+      long offset = 0;
+      int n;
+      while ((n = in.readNBytes(c, 0, c.length)) > 0) {
+        ctr.xor(offset, c, 0, n, pool);
+        out.write(c, 0, n);
+        offset += n;
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
 
-    for (int i = 0; i < out.length; i++) {
-      contents[i] ^= out[i];
+  static final String SHAKE_CTR_DECRYPT_USAGE =
+      "usage: sha3shake shake-ctr-decrypt [-j <JOBS>] <KEY> <FILE> [OFFSET [LEN]]\n";
+  static void shake_ctr_decrypt(String[] args) throws IOException {
+    final String[] rest = withoutOption(args, JOBS_OPTION, 2, 4);
+    final int jobs = rest.length != args.length ? jobs(args[2]) : Runtime.getRuntime().availableProcessors();
+    args = rest;
+    if (args.length < 3 || args.length > 5 || jobs < 1) {
+        System.err.printf(SHAKE_CTR_DECRYPT_USAGE);
+        System.exit(1);
     }
 
-    System.out.write(contents);
+    final byte[] key = args[1].getBytes();
+    final long offset = args.length > 3 ? Long.parseLong(args[3]) : 0;
+
+    final ForkJoinPool pool = new ForkJoinPool(jobs);
+    try (FileChannel in = FileChannel.open(Path.of(args[2]), StandardOpenOption.READ);
+         FileOutputStream out = new FileOutputStream(FileDescriptor.out)) {
+      final ByteBuffer header = Formats.readHeader(in, Formats.SHAKE_CTR, 2 + ShakeCTR.NONCE_BYTES);
+      final int sec = header.get() << 3;
+      if (header.get() != ShakeCTR.BLOCK_SHIFT) {
+        throw new IOException(args[2] + ": unsupported keystream block size");
+      }
+      final byte[] nonce = new byte[ShakeCTR.NONCE_BYTES];
+      header.get(nonce);
+      final ShakeCTR ctr = new ShakeCTR(sec, key, nonce);
+
+      // c starts right after the header, so any offset is a single seek away
+      final long size = in.size() - in.position();
+      if (offset < 0 || offset > size) {
+        throw new IOException(args[2] + ": offset " + offset + " is outside the " + size + " byte plaintext");
+      }
+      long left = args.length > 4 ? Math.min(Long.parseLong(args[4]), size - offset) : size - offset;
+      in.position(in.position() + offset);
+
+      final ByteBuffer m = ByteBuffer.allocate(ShakeCTR.BLOCK_BYTES * jobs);
+      long pos = offset;
+      while (left > 0) {
+        m.clear().limit((int) Math.min(left, m.capacity()));
+        while (m.hasRemaining()) {
+          if (in.read(m) < 0) throw new IOException(args[2] + ": truncated");
+        }
+        ctr.xor(pos, m.array(), 0, m.limit(), pool);
+        out.write(m.array(), 0, m.limit());
+        pos += m.limit();
+        left -= m.limit();
+      }
+    } finally {
+      pool.shutdown();
+    }
   }
 
-  static final String EC_KEYGEN_USAGE = "usage: sha3shake ec-keygen <PASSWORD> <KEY_FILE>\n";
+  /**
+   * Sets how many threads xor keystream blocks.
+   */
+  static final String JOBS_OPTION = "-j";
+
+  /**
+   * The JOBS value of a "-j JOBS" option, or 0 (never a valid count) when it
+   * is not a number.
+   */
+  static int jobs(final String value) {
+    try {
+      return Integer.parseInt(value);
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  /**
+   * The arguments without an option and its value given in option position,
+   * right after the command and ahead of min to max positional arguments.
+   * The same word anywhere else is left in place as a positional, as in
+   * withoutFlag.
+   */
+  static String[] withoutOption(final String[] args, final String option, final int min, final int max) {
+    if (args.length < min + 3 || args.length > max + 3 || !args[1].equals(option)) return args;
+    final String[] rest = new String[args.length - 2];
+    rest[0] = args[0];
+    System.arraycopy(args, 3, rest, 1, rest.length - 1);
+    return rest;
+  }
+
+  static final String EC_KEYGEN_USAGE = "usage: sha3shake ec-keygen [--hex] <PASSWORD> <KEY_FILE>\n";
   static void ec_keygen(String[] args) throws IOException {
+    final String[] rest = withoutFlag(args, HEX_FLAG, 2);
+    final boolean hex = rest.length != args.length;
+    args = rest;
     if (args.length != 3) {
       System.err.printf(EC_KEYGEN_USAGE);
       System.exit(1);
@@ -153,33 +570,26 @@ public class Main {
     final String private_file_name = args[2];
     final String public_file_name = args[2] + ".pub";
 
-    final var private_file = new PrintWriter(private_file_name);
-    final var public_file = new PrintWriter(public_file_name);
-
     final Edwards.Key key = Edwards.getKey(password.getBytes());
-    final BigInteger s = key.s();
-    {
-      final byte[] bytes = key.s().toByteArray();
-      for (int i = 0; i < bytes.length; i++) {
-        private_file.printf("%02x", bytes[i]);
-      }
-      private_file.println();
-      private_file.flush();
-    }
 
-    {
-      byte[] bytes = key.V().y.toByteArray();
-      for (int i = 0; i < bytes.length; i++) {
-        public_file.printf("%02x", bytes[i]);
-      }
-      public_file.println();
-      public_file.println(key.V().x.testBit(0));
-      public_file.flush();
+    if (!hex) {
+      writeFile(private_file_name,
+          Formats.putScalar(Formats.newHeader(Formats.PRIVATE_KEY, Formats.SCALAR_BYTES), key.s()));
+      writeFile(public_file_name,
+          Formats.putPoint(Formats.newHeader(Formats.PUBLIC_KEY, Formats.POINT_BYTES), key.V()));
+      return;
     }
+
+    Files.writeString(Path.of(private_file_name), Hex.encode(key.s().toByteArray()) + "\n");
+    Files.writeString(Path.of(public_file_name),
+        Hex.encode(key.V().y.toByteArray()) + "\n" + key.V().x.testBit(0) + "\n");
   }
 
-  static final String EC_ENCRYPT_USAGE = "usage: sha3shake ec-encrypt <KEY_FILE> <FILE>\n";
+  static final String EC_ENCRYPT_USAGE = "usage: sha3shake ec-encrypt [--hex] <KEY_FILE> <FILE>\n";
   static void ec_encrypt(String[] args) throws IOException {
+    final String[] rest = withoutFlag(args, HEX_FLAG, 2);
+    final boolean hex_output = rest.length != args.length;
+    args = rest;
     if (args.length != 3) {
       System.err.printf(EC_ENCRYPT_USAGE);
       System.exit(1);
@@ -189,67 +599,54 @@ public class Main {
     final String msg_file_name = args[2];
 
     // Read public key file.
-    final Scanner public_key_scanner = new Scanner(new File(args[1] + ".pub"));
-    final BigInteger Vy = new BigInteger(public_key_scanner.next(), 16);
-    final Edwards.Point V = Edwards.getPoint(Vy, public_key_scanner.nextBoolean());
+    final Edwards.Point V = readPublicKey(key_base + ".pub");
 
     final File msg_file = new File(msg_file_name);
-    final byte[] m = Files.readAllBytes(msg_file.toPath());
 
-    // Random 384-bit k
-    final byte[] k_bytes = new byte[48]; // 384 bits.
-    new SecureRandom().nextBytes(k_bytes);
-    BigInteger k = new BigInteger(1, k_bytes).mod(Edwards.r);
-
-    // W = kV, Z = kG
-    final Edwards.Point W = V.mul(k);
-    final Edwards.Point Z = Edwards.G.mul(k);
-
-    // SHAKE convert contents to byte array.
-    final byte[] Wy = W.y.toByteArray();
-    final byte[] shake_output = new byte[64];
-    SHA3SHAKE.SHAKE(256, Wy, shake_output.length << 3, shake_output);
-
-    final byte[] ka = new byte[32];
-    final byte[] ke = new byte[32];
-    for (int i = 0; i < 32; i++) {
-        ka[i] = shake_output[i];
-        ke[i] = shake_output[32 + i];
-    }
-
-    // SHAKE on ke, m bytes, XOR with m to get c.
-    final byte[] ke_stream = new byte[m.length];
-    SHA3SHAKE.SHAKE(128, ke, ke_stream.length << 3, ke_stream);
-
-    final byte[] c = new byte[m.length];
-    for (int i = 0; i < m.length; i++) {
-        c[i] = (byte) (m[i] ^ ke_stream[i]);
-    }
-
-    //SHA3-256, absorb ka and then c, extract digest t.
-    final byte[] mac_input = new byte[ka.length + c.length];
-    System.arraycopy(ka, 0, mac_input, 0, ka.length);
-    System.arraycopy(c, 0, mac_input, ka.length, c.length);
-
-    final byte[] t = new byte[32];
-    SHA3SHAKE.SHA3(256, mac_input, t);
-
-    // (Z,c,t) to FILE.bin as hex
-    try (FileWriter fw = new FileWriter(msg_file_name + ".bin");
-         PrintWriter out = new PrintWriter(fw)) {
-
-        out.println(Z.y.toString(16));
-        out.println(Z.x.testBit(0));
+    // Random 384-bit k, W = kV, Z = kG, and the keystream and tag keys from W.
+    final Edwards.Envelope envelope = Edwards.Envelope.seal(V, new SecureRandom());
+    final Edwards.Point Z = envelope.Z;
+
+    // (Z,t,c) to FILE.bin, in binary or as hex lines. t is only known once
+    // all of c is written, so its (fixed width) field is filled in last.
+    try (FileInputStream in = new FileInputStream(msg_file);
+         FileChannel out = FileChannel.open(Path.of(msg_file_name + ".bin"),
+           StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+        final long t_pos;
+        if (hex_output) {
+            writeAscii(out, Z.y.toString(16) + "\n" + Z.x.testBit(0) + "\n");
+            t_pos = out.position();
+            writeAscii(out, "0".repeat(Formats.TAG_BYTES << 1) + "\n");
+        } else {
+            final ByteBuffer header = Formats.newHeader(Formats.CIPHERTEXT, Formats.POINT_BYTES + Formats.TAG_BYTES);
+            Formats.putPoint(header, Z);
+            t_pos = header.position();
+            writeFully(out, header.position(header.limit()).flip());
+        }
 
-        for (int i = 0; i < t.length; i++) {
-            out.printf("%02x", t[i]);
+        // XOR m with the keystream a chunk at a time, absorbing c into t.
+        final byte[] c = new byte[STREAM_CHUNK];
+        final byte[] hex = new byte[STREAM_CHUNK << 1];
+        int n;
+        while ((n = in.readNBytes(c, 0, c.length)) > 0) {
+            envelope.encrypt(c, 0, n);
+            if (hex_output) {
+                writeFully(out, ByteBuffer.wrap(hex, 0, Hex.encode(c, 0, n, hex, 0)));
+            } else {
+                writeFully(out, ByteBuffer.wrap(c, 0, n));
+            }
         }
-        out.println();
 
-        for(int i = 0; i < c.length; i++) {
-            out.printf("%02x", c[i]);
+        final byte[] t = envelope.tag();
+        if (hex_output) {
+            writeAscii(out, "\n");
+            out.position(t_pos);
+            writeFully(out, ByteBuffer.wrap(hex, 0, Hex.encode(t, 0, t.length, hex, 0)));
+        } else {
+            out.position(t_pos);
+            writeFully(out, ByteBuffer.wrap(t));
         }
-        out.println();
     }
   }
 
@@ -264,84 +661,90 @@ public class Main {
       final String cipher_file_name = args[2];
 
       // Reads private scalar s from key file.
-      final Scanner private_scanner = new Scanner(new File(key_file_name));
-      final BigInteger s = new BigInteger(private_scanner.next(), 16).mod(Edwards.r);
-
-      // Reads ciphertext
-      final Scanner cipher_scanner = new Scanner(new File(cipher_file_name));
-      final BigInteger Zy = new BigInteger(cipher_scanner.next(), 16);
-      final boolean Zx_lsb = cipher_scanner.nextBoolean();
-
-      //t to byte[]
-      final String t_hex = cipher_scanner.next();
-      final int t_len = t_hex.length() / 2;
-      final byte[] t = new byte[t_len];
-      for (int i = 0; i < t_len; i++) {
-          int high = Character.digit(t_hex.charAt(2 * i), 16);
-          int low = Character.digit(t_hex.charAt(2 * i + 1), 16);
-          t[i] = (byte) ((high << 4) | low);
-      }
+      final BigInteger s = readPrivateKey(key_file_name).mod(Edwards.r);
+
+      final boolean authentic;
+
+      // The file is opened once. Its header is read straight off the channel, so
+      // the channel is left exactly at the start of c, and c is read from it once.
+      try (FileChannel cipher_in = FileChannel.open(Path.of(cipher_file_name), StandardOpenOption.READ)) {
+          final boolean binary = Formats.hasMagic(cipher_in, Formats.CIPHERTEXT);
+          final Edwards.Point Z;
+          final byte[] t = new byte[Formats.TAG_BYTES];
+          if (binary) {
+              final ByteBuffer header = Formats.readHeader(cipher_in, Formats.CIPHERTEXT, Formats.POINT_BYTES + t.length);
+              Z = Formats.getPoint(header, false);
+              header.get(t);
+          } else {
+              // unbuffered, a byte at a time, so nothing past the third line is consumed
+              final InputStream header_in = Channels.newInputStream(cipher_in);
+              final BigInteger Zy = new BigInteger(readLine(header_in), 16);
+              final boolean Zx_lsb = Boolean.parseBoolean(readLine(header_in));
+              final byte[] t_hex = readLine(header_in).getBytes();
+              if (Hex.decode(t_hex, 0, t_hex.length, t, 0) != t.length) {
+                  throw new IOException(cipher_file_name + ": malformed tag");
+              }
+              // Z from Zy and LSB of Zx
+              Z = Edwards.getPoint(Zy, Zx_lsb);
+          }
 
-      //c to byte[]
-      final String c_hex = cipher_scanner.next();
-      final int c_len = c_hex.length() / 2;
-      final byte[] c = new byte[c_len];
-      for (int i = 0; i < c_len; i++) {
-          int high = Character.digit(c_hex.charAt(2 * i), 16);
-          int low = Character.digit(c_hex.charAt(2 * i + 1), 16);
-          c[i] = (byte) ((high << 4) | low);
-      }
-      // Z from Zy and LSB of Zx
-      final Edwards.Point Z = Edwards.getPoint(Zy, Zx_lsb);
-
-      // W = sZ
-      final Edwards.Point W = Z.mul(s);
-
-      //SHAKE256 on y-coord of W to ka || ke
-      final byte[] Wy = W.y.toByteArray();
-      final byte[] shake_output = new byte[64]; // 512 bits
-      SHA3SHAKE.SHAKE(256, Wy, shake_output.length << 3, shake_output);
-
-      final byte[] ka = new byte[32];
-      final byte[] ke = new byte[32];
-      for (int i = 0; i < 32; i++) {
-          ka[i] = shake_output[i];
-          ke[i] = shake_output[32 + i];
-      }
-      // t' ka || c
-      final byte[] mac_input = new byte[ka.length + c.length];
-      System.arraycopy(ka, 0, mac_input, 0, ka.length);
-      System.arraycopy(c, 0, mac_input, ka.length, c.length);
-
-      final byte[] tprime = new byte[32];
-      SHA3SHAKE.SHA3(256, mac_input, tprime);
-
-      // t = t' ?
-      boolean work = (tprime.length == t.length);
-      for (int i = 0; work && i < t.length; i++) {
-          if (tprime[i] != t[i]) {
-              work = false;
+          // W = sZ, and the keystream and tag keys from W
+          final Edwards.Envelope envelope = Edwards.Envelope.open(s, Z);
+
+          // One pass over the file: t' over ka || c, while c is copied to a private
+          // temporary file. Only that copy, the c that was authenticated, is
+          // decrypted, and only once t checks out. No plaintext reaches the disk.
+          final Path c_copy = Files.createTempFile("ec-decrypt", ".c");
+          try {
+              final byte[] c = new byte[STREAM_CHUNK];
+              final byte[] hex = new byte[STREAM_CHUNK << 1];
+              try (InputStream c_in = new BufferedInputStream(Channels.newInputStream(cipher_in), STREAM_CHUNK);
+                   FileChannel copy_out = FileChannel.open(c_copy, StandardOpenOption.WRITE)) {
+                  int n;
+                  while ((n = readCiphertext(c_in, hex, c, binary)) > 0) {
+                      envelope.authenticate(c, 0, n);
+                      writeFully(copy_out, ByteBuffer.wrap(c, 0, n));
+                  }
+              }
+
+              // t = t' ?
+              authentic = envelope.check(t);
+              if (authentic) {
+                  // SHAKE on ke, XOR with c to get m
+                  try (InputStream c_in = new FileInputStream(c_copy.toFile())) {
+                      int n;
+                      while ((n = c_in.readNBytes(c, 0, c.length)) > 0) {
+                          envelope.decrypt(c, 0, n);
+                          System.out.write(c, 0, n);
+                      }
+                  }
+                  System.out.flush();
+              }
+          } finally {
+              Files.deleteIfExists(c_copy);
           }
       }
-      if (!work) {
+
+      if (!authentic) {
           System.err.println("Decryption error, authentication mismatch.");
           System.exit(1);
       }
+  }
 
-      // SHAKE on ke to c bytes, XOR with c to get m
-      final byte[] ke_stream = new byte[c.length];
-      SHA3SHAKE.SHAKE(128, ke, ke_stream.length << 3, ke_stream);
-
-      final byte[] m = new byte[c.length];
-      for (int i = 0; i < c.length; i++) {
-          m[i] = (byte) (c[i] ^ ke_stream[i]);
-      }
-
-      System.out.write(m);
+  /**
+   * Read up to c.length bytes of c, raw or from its hex line.
+   *
+   * @return the number of bytes read, 0 at the end of c
+   */
+  static int readCiphertext(final InputStream in, final byte[] hex, final byte[] c, final boolean binary) throws IOException {
+    return binary ? in.readNBytes(c, 0, c.length) : Hex.read(in, hex, c);
   }
 
-  static final String EC_SIGN_USAGE = "usage: sha3shake ec-sign <PASSWORD> <FILE>\n";
+  static final String EC_SIGN_USAGE = "usage: sha3shake ec-sign [--hex] <PASSWORD> <FILE>\n";
   static void ec_sign(String[] args) throws IOException {
+    final String[] rest = withoutFlag(args, HEX_FLAG, 2);
+    final boolean hex = rest.length != args.length;
+    args = rest;
     if (args.length != 3) {
       System.err.printf(EC_SIGN_USAGE);
       System.exit(1);
@@ -355,28 +758,21 @@ public class Main {
     final Edwards.Key key = Edwards.getKey(password.getBytes());
     final BigInteger s = key.s();
 
-    final SecureRandom secRand = new SecureRandom();
-    final byte[] randBytes = new byte[48];
-    secRand.nextBytes(randBytes);
+    final Edwards.Signature signature = Edwards.sign(s, message, new SecureRandom());
+    final BigInteger h = signature.h();
+    final BigInteger z = signature.z();
 
-    final BigInteger k = new BigInteger(randBytes).mod(Edwards.r);
-    final Edwards.Point U = Edwards.G.mul(k);
-
-    final BigInteger h;
-    {
-      final SHA3SHAKE sha256 = new SHA3SHAKE();
-      sha256.init(256, false);
-      sha256.absorb(U.y.toByteArray());
-      sha256.absorb(message);
-      final byte[] digest = sha256.digest();
-      assert digest.length == 32;
-      h = new BigInteger(digest).mod(Edwards.r);
+    if (hex) {
+      final ByteBuffer scalar = ByteBuffer.allocate(Formats.SCALAR_BYTES);
+      System.out.println(Hex.encode(Formats.putScalar(scalar, h).array()));
+      System.out.println(Hex.encode(Formats.putScalar(scalar.clear(), z).array()));
+      return;
     }
 
-    final BigInteger z = k.subtract(h.multiply(s).mod(Edwards.r)).mod(Edwards.r);
-
-    System.out.println(h);
-    System.out.println(z);
+    final ByteBuffer sig = Formats.newHeader(Formats.SIGNATURE, Formats.SCALAR_BYTES << 1);
+    Formats.putScalar(Formats.putScalar(sig, h), z);
+    System.out.write(sig.array());
+    System.out.flush();
   }
 
   static final String EC_VERIFY_USAGE = "usage: sha3shake ec-verify <PUB_KEY_FILE> <SIGNATURE_FILE> <FILE>\n";
@@ -391,47 +787,174 @@ public class Main {
 
     final byte[] message = Files.readAllBytes(new File(message_file).toPath());
 
-    final Edwards.Point V;
-    {
-      final Scanner scanner = new Scanner(new File(pub_key_file));
-      final BigInteger y = new BigInteger(scanner.next(), 16);
-
-      V = Edwards.getPoint(y, scanner.nextBoolean());
+    final Edwards.Point V = readPublicKey(pub_key_file);
 
-      scanner.close();
-    }
-
-    final Edwards.Point UPrime;
     final BigInteger h;
-    {
-      final Scanner scanTwo = new Scanner(new File(sig_file));
-      h = new BigInteger(scanTwo.next());
-      final BigInteger z = new BigInteger(scanTwo.next());
+    final BigInteger z;
+    final byte[] sig_contents = Files.readAllBytes(Path.of(sig_file));
+    if (Formats.hasMagic(sig_contents, Formats.SIGNATURE)) {
+      final ByteBuffer sig = Formats.checkHeader(ByteBuffer.wrap(sig_contents), Formats.SIGNATURE, Formats.SCALAR_BYTES << 1);
+      h = Formats.getScalar(sig);
+      z = Formats.getScalar(sig);
+    } else {
+      final Scanner scanTwo = new Scanner(new String(sig_contents, StandardCharsets.US_ASCII));
+      h = new BigInteger(1, Hex.decode(scanTwo.next()));
+      z = new BigInteger(1, Hex.decode(scanTwo.next()));
       scanTwo.close();
-      UPrime = Edwards.G.mul(z).add(V.mul(h));
     }
 
-    final BigInteger hPrime;
-    {
-      final SHA3SHAKE sha256 = new SHA3SHAKE();
-      sha256.init(256, false);
-      sha256.absorb(UPrime.y.toByteArray());
-      sha256.absorb(message);
-      final byte[] digest = sha256.digest();
+    if (Edwards.verify(V, h, z, message)) {
+      System.out.println("VERIFIED");
+    } else {
+      System.out.println("INVALID SIGNATURE!");
+    }
+  }
 
-      hPrime = new BigInteger(digest).mod(Edwards.r);
+  static final String SERVE_USAGE = "usage: sha3shake serve (--socket <PATH> | --port <PORT>)\n";
+  static void serve(String[] args) throws IOException {
+    if (args.length != 3 || !(args[1].equals("--socket") || args[1].equals("--port"))) {
+      System.err.printf(SERVE_USAGE);
+      System.exit(1);
     }
 
-    if (hPrime.equals(h)) {
-      System.out.println("VERIFIED");
+    final ServerSocketChannel server;
+    if (args[1].equals("--socket")) {
+      final Path socket = Path.of(args[2]);
+      server = ServerSocketChannel.open(StandardProtocolFamily.UNIX).bind(UnixDomainSocketAddress.of(socket));
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+        try {
+          Files.deleteIfExists(socket);
+        } catch (IOException e) {
+          // nothing more to do on the way out
+        }
+      }));
     } else {
-      System.out.println("INVALID SIGNATURE!");
+      server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(args[2])));
+    }
+
+    // a thread per connection, since clients hold connections open between requests
+    Server.serve(server, Executors.newFixedThreadPool(Server.MAX_CONNECTIONS));
+  }
+
+  /**
+   * Read a private key, in binary or as a hex line.
+   * Keys are read whole, once, so they can come through a pipe.
+   */
+  static BigInteger readPrivateKey(final String file_name) throws IOException {
+    final byte[] contents = Files.readAllBytes(Path.of(file_name));
+    if (Formats.hasMagic(contents, Formats.PRIVATE_KEY)) {
+      return Formats.getScalar(Formats.checkHeader(ByteBuffer.wrap(contents), Formats.PRIVATE_KEY, Formats.SCALAR_BYTES));
+    }
+    try (Scanner scanner = new Scanner(new String(contents, StandardCharsets.US_ASCII))) {
+      return new BigInteger(scanner.next(), 16);
+    }
+  }
+
+  /**
+   * Read a public key, in binary or as hex y and x LSB lines.
+   */
+  static Edwards.Point readPublicKey(final String file_name) throws IOException {
+    final byte[] contents = Files.readAllBytes(Path.of(file_name));
+    if (Formats.hasMagic(contents, Formats.PUBLIC_KEY)) {
+      return Formats.getPoint(Formats.checkHeader(ByteBuffer.wrap(contents), Formats.PUBLIC_KEY, Formats.POINT_BYTES), true);
     }
+    try (Scanner scanner = new Scanner(new String(contents, StandardCharsets.US_ASCII))) {
+      final BigInteger y = new BigInteger(scanner.next(), 16);
+      return Edwards.KEY_CACHE.get(y, scanner.nextBoolean());
+    }
+  }
+
+  /**
+   * Selects the original hex text formats for keys, ciphertexts and signatures.
+   */
+  static final String HEX_FLAG = "--hex";
+
+  /**
+   * The arguments without a flag given in option position, right after the
+   * command and ahead of exactly positionals positional arguments. The same
+   * word anywhere else, or with the wrong count, is left in place as a
+   * positional (a password or file name).
+   */
+  static String[] withoutFlag(final String[] args, final String flag, final int positionals) {
+    if (args.length != positionals + 2 || !args[1].equals(flag)) return args;
+    return Arrays.copyOfRange(args, 1, args.length);
+  }
+
+  /**
+   * Buffered hex output to standard out, which must be flushed when done.
+   */
+  static Hex.Writer stdout() {
+    return new Hex.Writer(Channels.newChannel(new FileOutputStream(FileDescriptor.out)));
+  }
+
+  static void writeFile(final String file_name, final ByteBuffer buf) throws IOException {
+    try (FileChannel out = FileChannel.open(Path.of(file_name),
+           StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      writeFully(out, buf.flip());
+    }
+  }
+
+  /**
+   * Size of the window a file is mapped through while it is absorbed.
+   */
+  static final long MAP_WINDOW = 1L << 26; // 64 MiB
+
+  /**
+   * Absorb a whole file into the sponge, mapping it one window at a time
+   * so heap use stays constant whatever the size of the file.
+   * Pipes, devices and the like have no size to map, they are read a chunk at a time to EOF.
+   *
+   * @param sponge an initialized sponge to absorb into
+   * @param file the file to absorb
+   */
+  static void absorbFile(final SHA3SHAKE sponge, final File file) throws IOException {
+    final Path path = file.toPath();
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      if (!Files.isRegularFile(path)) {
+        final ByteBuffer chunk = ByteBuffer.allocate(STREAM_CHUNK);
+        while (channel.read(chunk.clear()) >= 0) {
+          sponge.absorb(chunk.flip());
+        }
+        return;
+      }
+
+      final long size = channel.size();
+      for (long pos = 0; pos < size; pos += MAP_WINDOW) {
+        sponge.absorb(channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(MAP_WINDOW, size - pos)));
+      }
+    }
+  }
+
+  /**
+   * Chunk size, in bytes, for streaming commands.
+   */
+  static final int STREAM_CHUNK = 1 << 16;
+
+  /**
+   * Read a single '\n' terminated ASCII line, without the terminator.
+   */
+  static String readLine(final InputStream in) throws IOException {
+    final StringBuilder line = new StringBuilder();
+    int b;
+    while ((b = in.read()) != -1 && b != '\n') {
+      if (b != '\r') line.append((char) b);
+    }
+    return line.toString();
+  }
+
+  static void writeAscii(final FileChannel out, final String s) throws IOException {
+    writeFully(out, ByteBuffer.wrap(s.getBytes(StandardCharsets.US_ASCII)));
+  }
+
+  static void writeFully(final FileChannel out, final ByteBuffer buf) throws IOException {
+    while (buf.hasRemaining()) out.write(buf);
   }
 
   static final String USAGE =
-        SHA3_USAGE + SHAKE_RANDOM_USAGE + SHAKE_ENCRYPT_USAGE + MAC_USAGE +
-        EC_KEYGEN_USAGE + EC_ENCRYPT_USAGE + EC_DECRYPT_USAGE + EC_SIGN_USAGE + EC_VERIFY_USAGE;
+        SHA3_USAGE + PARALLEL_HASH_USAGE + K12_USAGE + SHAKE_RANDOM_USAGE + SHAKE_ENCRYPT_USAGE +
+        SHAKE_CTR_ENCRYPT_USAGE + SHAKE_CTR_DECRYPT_USAGE + MAC_USAGE +
+        EC_KEYGEN_USAGE + EC_ENCRYPT_USAGE + EC_DECRYPT_USAGE + EC_SIGN_USAGE + EC_VERIFY_USAGE +
+        SERVE_USAGE;
 
   // { // test maths
   //   assert Edwards.G.mul(BigInteger.ZERO).equals(new Edwards.Point());
@@ -0,0 +1,154 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * ParallelHash-<128,256> of NIST SP 800-185, a tree hash whose leaves
+ * can be hashed on every core.
+ *
+ * The input is split into B byte blocks, each hashed to 2c bits with
+ * cSHAKE-c(block, "", "") (plain SHAKE); the root is
+ *
+ *   cSHAKE-c(left_encode(B) || leaf 0 || ... || leaf n-1 || right_encode(n) || right_encode(L),
+ *            L, "ParallelHash", S)
+ *
+ * or with right_encode(0) in place of right_encode(L) for ParallelHashXOF.
+ * Leaves go through a bounded window at a time, so memory stays constant for any input.
+ */
+final class ParallelHash {
+  private static final byte[] N = "ParallelHash".getBytes();
+
+  /**
+   * The most input bytes, and the most leaves, hashed per window before the root absorbs their digests.
+   */
+  static final int WINDOW = 1 << 26; // 64 MiB
+  static final int WINDOW_LEAVES = 1 << 15;
+  /**
+   * About the most input bytes read per call from a file that cannot be mapped.
+   */
+  static final int READ = 1 << 20;
+
+  private final int sec;
+  private final int block;
+  private final int leaf_bytes;
+  private final int window_blocks;
+  private final SHA3SHAKE root;
+  private final byte[] leaves;
+  private final ForkJoinPool pool;
+  private long count = 0;
+
+  /**
+   * @param sec the security level, 128 or 256
+   * @param block the block size B in bytes
+   * @param S the customization string
+   * @param pool the pool leaves are hashed on
+   */
+  ParallelHash(final int sec, final int block, final byte[] S, final ForkJoinPool pool) {
+    if (sec != 128 && sec != 256) throw new IllegalArgumentException("Invalid security level: " + sec);
+    if (block < 1) throw new IllegalArgumentException("Block size must be positive.");
+    this.sec = sec;
+    this.block = block;
+    this.leaf_bytes = sec >>> 2;
+    this.pool = pool;
+
+    this.root = new SHA3SHAKE();
+    this.root.init(sec, N, S);
+    this.root.absorb(SHA3SHAKE.leftEncode(block));
+
+    // a window is a whole number of blocks
+    this.window_blocks = Math.max(1, Math.min(WINDOW / block, WINDOW_LEAVES));
+    this.leaves = new byte[this.window_blocks * this.leaf_bytes];
+  }
+
+  /**
+   * Hash the whole of a file, mapping a regular file one window at a time,
+   * and reading anything else (a pipe, a device) whole blocks at a time to its end.
+   */
+  ParallelHash update(final Path path) throws IOException {
+    try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+      final long window = (long) this.window_blocks * this.block;
+      if (Files.isRegularFile(path)) {
+        final long size = file.size();
+        for (long pos = 0; pos < size; pos += window) {
+          update(file.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(window, size - pos)));
+        }
+        return this;
+      }
+
+      // a read may stop short anywhere, so each buffer is filled before it is hashed
+      final ByteBuffer data = ByteBuffer.allocate((int) Math.min(window, Math.max(1, READ / this.block) * (long) this.block));
+      boolean eof = false;
+      while (!eof) {
+        data.clear();
+        while (data.hasRemaining() && !eof) eof = file.read(data) < 0;
+        update(data.flip());
+      }
+    }
+    return this;
+  }
+
+  /**
+   * Hash the input in data, all of which but (possibly) the very last call must be
+   * a whole number of blocks, and at most a window long.
+   */
+  ParallelHash update(final ByteBuffer data) {
+    final int n = (data.remaining() + this.block - 1) / this.block;
+    if (n * this.leaf_bytes > this.leaves.length) throw new IllegalArgumentException("More than a window of input.");
+
+    // a task per run of leaves, a few per thread to even out the load
+    final int per_task = Math.max(1, n / (4 * this.pool.getParallelism()));
+    final List<Callable<Void>> tasks = new ArrayList<>();
+    for (int first = 0; first < n; first += per_task) {
+      final int from = first;
+      final int to = Math.min(n, first + per_task);
+      tasks.add(() -> {
+        final SHA3SHAKE leaf = new SHA3SHAKE();
+        for (int i = from; i < to; i++) {
+          final int start = data.position() + i * this.block;
+          leaf.init(this.sec, true);
+          leaf.absorb(data.slice(start, Math.min(this.block, data.limit() - start)));
+          leaf.squeeze(this.leaves, i * this.leaf_bytes, this.leaf_bytes);
+        }
+        return null;
+      });
+    }
+
+    for (final Future<Void> task : this.pool.invokeAll(tasks)) {
+      try {
+        task.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException(e);
+      } catch (ExecutionException e) {
+        throw new IllegalStateException(e.getCause());
+      }
+    }
+
+    this.root.absorb(this.leaves, 0, n * this.leaf_bytes);
+    this.count += n;
+    data.position(data.limit());
+    return this;
+  }
+
+  /**
+   * Finish the hash.
+   *
+   * @param L the output length in bits (a multiple of 8)
+   * @param xof whether to compute ParallelHashXOF, whose output does not depend on L
+   * @return the L / 8 byte output
+   */
+  byte[] digest(final int L, final boolean xof) {
+    this.root.absorb(SHA3SHAKE.rightEncode(this.count));
+    this.root.absorb(SHA3SHAKE.rightEncode(xof ? 0 : L));
+    return this.root.squeeze(L >>> 3);
+  }
+}
@@ -1,4 +1,9 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Arrays;
+import java.util.Objects;
 
 public class SHA3SHAKE {
   /**
@@ -9,6 +14,14 @@ public class SHA3SHAKE {
    * 24 rounds in the Keccak function
    */
   private static final int KECCAK_ROUNDS = 24;
+  /**
+   * 12 rounds in the Keccak-p permutation of TurboSHAKE and KangarooTwelve
+   */
+  private static final int TURBO_ROUNDS = 12;
+  /**
+   * Little-endian u64 view over a byte array, to move whole lanes in and out of the sponge
+   */
+  private static final VarHandle LANE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
   /**
   * The data buffer, must be BUFFER_LEN long
   */
@@ -17,13 +30,82 @@ public class SHA3SHAKE {
   * The digest length for the output in bytes
   */
   private int digest_length;
+  /**
+  * The rate of the sponge in bytes, always a whole number of lanes
+  */
+  private int rate;
 
-  private boolean is_shake;
+  /**
+  * The domain separation bits appended by pad: SHA-3, SHAKE or cSHAKE
+  */
+  private long domain;
+  /**
+  * The first round of Keccak-f each permutation starts at: 0 for all 24 rounds,
+  * 12 for the Keccak-p[1600, 12] of TurboSHAKE
+  */
+  private int first_round;
+  private boolean squeezing;
   private int absorb_pos;
   private int squeeze_pos;
 
+  /**
+   * Each thread's sponge handed out by local
+   */
+  private static final ThreadLocal<SHA3SHAKE> LOCAL = ThreadLocal.withInitial(SHA3SHAKE::new);
+
   public SHA3SHAKE() {}
 
+  /**
+  * This thread's reusable sponge, freshly initialized, so hot paths can hash
+  * without allocating. It is the same object on every call from a thread,
+  * so be done with it before calling local, SHA3 or SHAKE again, and wipe it
+  * once it has absorbed a secret.
+  *
+  * @param suffix SHA-3/SHAKE suffix (SHA-3 digest bitlength = suffix, SHAKE sec level = suffix)
+  * @param isShake whether to initialize for SHAKE rather than SHA-3
+  * @return the thread's sponge
+  */
+  public static SHA3SHAKE local(int suffix, boolean isShake) {
+    final SHA3SHAKE sponge = LOCAL.get();
+    sponge.init(suffix, isShake);
+    return sponge;
+  }
+
+  /**
+  * Copy the whole state of another sponge into this one, such as a snapshot
+  * taken after absorbing a common prefix, which then need not be absorbed again.
+  *
+  * @param other an initialized sponge
+  * @return this sponge
+  */
+  public SHA3SHAKE set(final SHA3SHAKE other) {
+    assert other.buffer != null;
+    if (this.buffer == null)
+      this.buffer = new long[BUFFER_LEN];
+    System.arraycopy(other.buffer, 0, this.buffer, 0, BUFFER_LEN);
+
+    this.digest_length = other.digest_length;
+    this.rate = other.rate;
+    this.domain = other.domain;
+    this.first_round = other.first_round;
+    this.squeezing = other.squeezing;
+    this.absorb_pos = other.absorb_pos;
+    this.squeeze_pos = other.squeeze_pos;
+    return this;
+  }
+
+  /**
+  * Zero the whole state, so nothing absorbed (a key, say) stays in memory
+  * after the sponge is done with. The sponge must be initialized again before reuse.
+  */
+  public void wipe() {
+    if (this.buffer != null)
+      Arrays.fill(this.buffer, 0L);
+    this.squeezing = false;
+    this.absorb_pos = 0;
+    this.squeeze_pos = 0;
+  }
+
   /**
   * Initialize the SHA-3 sponge.
   * The suffix must be one of 224, 256, 384, or 512 for SHA-3, or one of 128 or 256 for SHAKE.
@@ -39,10 +121,9 @@ public class SHA3SHAKE {
   * @param suffix SHA-3/SHAKE suffix (SHA-3 digest bitlength = suffix, SHAKE sec level = suffix)
   */
   public void init(int suffix, boolean isShake) {
-    if (suffix != 128
-     && suffix != 256
-     && suffix != 384
-     && suffix != 512) throw new IllegalArgumentException("Invalid suffix.");
+    if (isShake ? (suffix != 128 && suffix != 256)
+                : (suffix != 224 && suffix != 256 && suffix != 384 && suffix != 512))
+      throw new IllegalArgumentException("Invalid suffix.");
 
     if (this.buffer == null)
       this.buffer = new long[BUFFER_LEN];
@@ -53,11 +134,93 @@ public class SHA3SHAKE {
       this.buffer[i] = 0;
 
     this.digest_length = suffix >>> 3;
-    this.is_shake = isShake;
+    this.rate = 200 - 2 * this.digest_length;
+    this.domain = isShake ? 0x1FL : 0x06L;
+    this.first_round = 0;
+    this.squeezing = false;
     this.absorb_pos = 0;
     this.squeeze_pos = 0;
   }
 
+  /**
+  * Initialize the sponge for cSHAKE-<128,256> (NIST SP 800-185), with function-name
+  * string N and customization string S. With both empty it is plain SHAKE.
+  *
+  * @param suffix the security level (either 128 or 256)
+  * @param N the function-name string, empty unless defining a function on top of cSHAKE
+  * @param S the customization string
+  */
+  public void init(int suffix, byte[] N, byte[] S) {
+    init(suffix, true);
+    if (N.length == 0 && S.length == 0) return;
+
+    this.domain = 0x04L;
+    absorbBytepad(encodeString(N), encodeString(S));
+  }
+
+  /**
+  * Initialize the sponge for TurboSHAKE-<128,256> (RFC 9861): SHAKE's rate on
+  * Keccak-p[1600, 12], the last 12 of the 24 rounds, with domain separation byte D.
+  *
+  * @param suffix the security level (either 128 or 256)
+  * @param D the domain separation byte, 0x01 to 0x7F (0x1F for plain TurboSHAKE)
+  */
+  public void initTurbo(int suffix, int D) {
+    if (D < 0x01 || D > 0x7F)
+      throw new IllegalArgumentException("Invalid domain byte: " + D);
+    init(suffix, true);
+
+    this.domain = D;
+    this.first_round = KECCAK_ROUNDS - TURBO_ROUNDS;
+  }
+
+  /**
+  * Absorb bytepad(X, rate) of SP 800-185: left_encode(rate), the strings,
+  * then zeros to the end of the block (which leave the state as it is).
+  * Must start on a block boundary.
+  */
+  void absorbBytepad(final byte[]... X) {
+    assert this.absorb_pos == 0 && !this.squeezing;
+    absorb(leftEncode(this.rate));
+    for (final byte[] x : X) absorb(x);
+    if (this.absorb_pos != 0) {
+      permute(this.buffer);
+      this.absorb_pos = 0;
+    }
+  }
+
+  /**
+  * left_encode(x) of SP 800-185: the byte length of x's big-endian encoding, then the encoding.
+  */
+  static byte[] leftEncode(final long x) {
+    final int n = Math.max(1, (71 - Long.numberOfLeadingZeros(x)) >>> 3);
+    final byte[] out = new byte[n + 1];
+    out[0] = (byte) n;
+    for (int i = 0; i < n; i++) out[n - i] = (byte) (x >>> (i << 3));
+    return out;
+  }
+
+  /**
+  * right_encode(x) of SP 800-185: x's big-endian encoding, then its byte length.
+  */
+  static byte[] rightEncode(final long x) {
+    final int n = Math.max(1, (71 - Long.numberOfLeadingZeros(x)) >>> 3);
+    final byte[] out = new byte[n + 1];
+    out[n] = (byte) n;
+    for (int i = 0; i < n; i++) out[n - 1 - i] = (byte) (x >>> (i << 3));
+    return out;
+  }
+
+  /**
+  * encode_string(S) of SP 800-185: left_encode of S's length in bits, then S.
+  */
+  static byte[] encodeString(final byte[] S) {
+    final byte[] len = leftEncode((long) S.length << 3);
+    final byte[] out = Arrays.copyOf(len, len.length + S.length);
+    System.arraycopy(S, 0, out, len.length, S.length);
+    return out;
+  }
+
   /**
   * Update the SHAKE sponge with a byte-oriented data chunk.
   *
@@ -69,18 +232,55 @@ public class SHA3SHAKE {
     assert data != null;
     assert this.buffer != null;
     assert this.absorb_pos >= 0;
+    Objects.checkFromIndexSize(pos, len, data.length);
+    if (this.squeezing) throw new IllegalStateException("Cannot absorb after squeezing.");
 
-    int i = 0;
-    int rsize = 200 - 2 * this.digest_length;
-    for (i = pos; i < len; i += 1) {
-      this.buffer[this.absorb_pos >>> 3] ^= ((long) data[i]) << (((this.absorb_pos & 0b111) << 3));
+    final long[] st = this.buffer;
+    final int rsize = this.rate;
+    final int end = pos + len;
 
+    // unaligned head, byte at a time until the next lane boundary
+    while (pos < end && (this.absorb_pos & 0b111) != 0) {
+      st[this.absorb_pos >>> 3] ^= (data[pos++] & 0xFFL) << ((this.absorb_pos & 0b111) << 3);
       this.absorb_pos += 1;
-      if (this.absorb_pos >= rsize) {
+    }
+    if (this.absorb_pos == rsize) {
+      this.absorb_pos = 0;
+      permute(st);
+    }
+
+    // whole lanes, until the current block is filled
+    while (this.absorb_pos != 0 && end - pos >= 8) {
+      st[this.absorb_pos >>> 3] ^= (long) LANE.get(data, pos);
+      pos += 8;
+      this.absorb_pos += 8;
+      if (this.absorb_pos == rsize) {
         this.absorb_pos = 0;
-        keccak(this.buffer);
+        permute(st);
+      }
+    }
+
+    // full rate blocks straight into the permutation
+    if (this.absorb_pos == 0) {
+      final int lanes = rsize >>> 3;
+      while (end - pos >= rsize) {
+        for (int i = 0; i < lanes; i++, pos += 8)
+          st[i] ^= (long) LANE.get(data, pos);
+        permute(st);
       }
     }
+
+    // remaining whole lanes, then the unaligned tail
+    while (end - pos >= 8) {
+      st[this.absorb_pos >>> 3] ^= (long) LANE.get(data, pos);
+      pos += 8;
+      this.absorb_pos += 8;
+    }
+    while (pos < end) {
+      st[this.absorb_pos >>> 3] ^= (data[pos++] & 0xFFL) << ((this.absorb_pos & 0b111) << 3);
+      this.absorb_pos += 1;
+    }
+    assert this.absorb_pos < rsize;
   }
 
   /**
@@ -102,49 +302,153 @@ public class SHA3SHAKE {
     absorb(data, 0, data.length);
   }
 
+  /**
+  * Update the SHAKE sponge with the remaining bytes of a buffer.
+  * Direct and mapped buffers are read in place, without a copy onto the heap.
+  * Off-heap memory segments can be passed through their asByteBuffer() view.
+  * On return the buffer's position equals its limit.
+  *
+  * @param data byte-oriented data buffer
+  */
+  public void absorb(ByteBuffer data) {
+    assert this.buffer != null;
+    if (data.hasArray()) {
+      absorb(data.array(), data.arrayOffset() + data.position(), data.remaining());
+      data.position(data.limit());
+      return;
+    }
+    if (this.squeezing) throw new IllegalStateException("Cannot absorb after squeezing.");
+
+    final ByteBuffer le = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    final long[] st = this.buffer;
+    final int rsize = this.rate;
+    final int end = data.limit();
+    int pos = data.position();
+
+    while (pos < end) {
+      if ((this.absorb_pos & 0b111) == 0 && end - pos >= 8) {
+        st[this.absorb_pos >>> 3] ^= le.getLong(pos);
+        pos += 8;
+        this.absorb_pos += 8;
+      } else {
+        st[this.absorb_pos >>> 3] ^= (le.get(pos++) & 0xFFL) << ((this.absorb_pos & 0b111) << 3);
+        this.absorb_pos += 1;
+      }
+
+      if (this.absorb_pos == rsize) {
+        this.absorb_pos = 0;
+        permute(st);
+      }
+    }
+
+    data.position(end);
+  }
+
+  /**
+  * Pad the absorbed input with the SHA-3/SHAKE domain suffix
+  * and switch the sponge over to squeezing.
+  */
+  private void pad() {
+    this.buffer[this.absorb_pos >>> 3] ^= this.domain << ((this.absorb_pos & 0b111) << 3);
+    this.buffer[(this.rate >>> 3) - 1] ^= 0x80L << 56;
+
+    permute(this.buffer);
+    this.absorb_pos = 0;
+    this.squeeze_pos = 0;
+    this.squeezing = true;
+  }
+
   /**
   * Squeeze a chunk of hashed bytes from the sponge.
   * Call this method as many times as needed to extract the total desired number of bytes.
   *
   * @param out the output buffer
+  * @param pos initial index to write to
   * @param len desired number of squeezed bytes
-  * @return newly allocated buffer containing the desired hash value
+  * @return the out buffer
   */
-  public byte[] squeeze(final byte[] out, final int len) {
-    assert out.length >= len;
-    final int rsize = 200 - 2 * this.digest_length;
+  public byte[] squeeze(final byte[] out, int pos, final int len) {
+    assert this.buffer != null;
+    Objects.checkFromIndexSize(pos, len, out.length);
+    if (!this.squeezing) pad();
 
-    if (this.absorb_pos != 0) {
-      if (!this.is_shake) {
-        this.buffer[this.absorb_pos >>> 3] ^= 0x06L << (((this.absorb_pos & 0b111) << 3));
-        this.buffer[(rsize >>> 3) - 1] = (0x80L << 56) | (this.buffer[(rsize >>> 3) - 1] & 0xFF_FF_FF_FF_FF_FF_FFL);
-      } else {
-        this.buffer[this.absorb_pos >>> 3] ^= 0x1FL << (((this.absorb_pos & 0b111) << 3));
-        this.buffer[(rsize >>> 3) - 1] = (0x80L << 56) | (this.buffer[(rsize >>> 3) - 1] & 0xFF_FF_FF_FF_FF_FF_FFL);
+    final long[] st = this.buffer;
+    final int rsize = this.rate;
+    final int end = pos + len;
+
+    while (pos < end) {
+      if (this.squeeze_pos == rsize) {
+        permute(st);
+        this.squeeze_pos = 0;
       }
 
-      keccak(this.buffer);
-      this.absorb_pos = 0;
+      if ((this.squeeze_pos & 0b111) == 0) {
+        // whole lanes, as many as the block and the output allow
+        final int lanes = Math.min(rsize - this.squeeze_pos, end - pos) >>> 3;
+        for (int i = 0; i < lanes; i++, pos += 8, this.squeeze_pos += 8)
+          LANE.set(out, pos, st[this.squeeze_pos >>> 3]);
+        if (lanes != 0) continue;
+      }
+
+      out[pos++] = (byte) (st[this.squeeze_pos >>> 3] >>> ((this.squeeze_pos & 0b111) << 3));
+      this.squeeze_pos += 1;
     }
 
-    int remaining = len;
-    int out_pos = 0;
+    return out;
+  }
+
+  /**
+  * Squeeze a chunk of hashed bytes from the sponge.
+  * Call this method as many times as needed to extract the total desired number of bytes.
+  *
+  * @param out the output buffer
+  * @param len desired number of squeezed bytes
+  * @return the out buffer
+  */
+  public byte[] squeeze(final byte[] out, final int len) {
+    return squeeze(out, 0, len);
+  }
 
-    while (remaining >= rsize) {
-      for (this.squeeze_pos = 0; this.squeeze_pos < rsize; this.squeeze_pos++) {
-        out[this.squeeze_pos + out_pos] = (byte) ((this.buffer[this.squeeze_pos >>> 3]
-          >>> (((this.squeeze_pos & 0b111) << 3))) & 0xFF);
-      }
-      out_pos += rsize;
-      keccak(this.buffer);
-      remaining -= rsize;
+  /**
+  * Squeeze hashed bytes from the sponge until the buffer has no bytes remaining.
+  * Direct and mapped buffers are written in place, without a copy from the heap.
+  * Off-heap memory segments can be passed through their asByteBuffer() view.
+  *
+  * @param out the output buffer
+  * @return the out buffer, with its position advanced to its limit
+  */
+  public ByteBuffer squeeze(final ByteBuffer out) {
+    assert this.buffer != null;
+    if (out.hasArray()) {
+      squeeze(out.array(), out.arrayOffset() + out.position(), out.remaining());
+      out.position(out.limit());
+      return out;
     }
+    if (!this.squeezing) pad();
+
+    final ByteBuffer le = out.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    final long[] st = this.buffer;
+    final int rsize = this.rate;
+    final int end = out.limit();
+    int pos = out.position();
+
+    while (pos < end) {
+      if (this.squeeze_pos == rsize) {
+        permute(st);
+        this.squeeze_pos = 0;
+      }
 
-    for (this.squeeze_pos = 0; this.squeeze_pos < remaining; this.squeeze_pos++) {
-      out[this.squeeze_pos + out_pos] = (byte) ((this.buffer[this.squeeze_pos >>> 3] >>> (((this.squeeze_pos & 0b111) << 3))) & 0xFF);
+      if ((this.squeeze_pos & 0b111) == 0 && end - pos >= 8) {
+        le.putLong(pos, st[this.squeeze_pos >>> 3]);
+        pos += 8;
+        this.squeeze_pos += 8;
+      } else {
+        le.put(pos++, (byte) (st[this.squeeze_pos >>> 3] >>> ((this.squeeze_pos & 0b111) << 3)));
+        this.squeeze_pos += 1;
+      }
     }
-    if (this.squeeze_pos == rsize) this.squeeze_pos = 0;
 
+    out.position(end);
     return out;
   }
 
@@ -194,11 +498,13 @@ public class SHA3SHAKE {
   public static byte[] SHA3(int suffix, byte[] X, byte[] out) {
     assert out.length >= suffix >>> 3;
 
-    final SHA3SHAKE sha = new SHA3SHAKE();
-    sha.init(suffix);
-
-    sha.absorb(X);
-    sha.digest(out);
+    final SHA3SHAKE sha = local(suffix, false);
+    try {
+      sha.absorb(X);
+      sha.digest(out);
+    } finally {
+      sha.wipe(); // X may be a secret
+    }
     return out;
   }
 
@@ -215,29 +521,196 @@ public class SHA3SHAKE {
     final int length_bytes = L >>> 3;
     assert out.length >= length_bytes;
 
-    final SHA3SHAKE sha = new SHA3SHAKE();
-    sha.init(suffix, true);
+    final SHA3SHAKE sha = local(suffix, true);
+    try {
+      sha.absorb(X);
+      sha.squeeze(out, length_bytes);
+    } finally {
+      sha.wipe(); // X may be a secret
+    }
+    return out;
+  }
 
-    sha.absorb(X);
-    sha.squeeze(out, length_bytes);
+  /**
+  * Compute SHA-3-<224,256,384,512> of every message in a batch.
+  *
+  * @param suffix desired output length in bits (one of 224, 256, 384, 512)
+  * @param X messages to be hashed
+  * @param out hash value buffer, digest i is written at i * (suffix / 8)
+  * @return the out buffer containing the desired hash values.
+  */
+  public static byte[] SHA3Batch(int suffix, byte[][] X, byte[] out) {
+    if (suffix != 224 && suffix != 256 && suffix != 384 && suffix != 512)
+      throw new IllegalArgumentException("Invalid suffix.");
 
+    batch(200 - 2 * (suffix >>> 3), 0x06, X, suffix >>> 3, out);
     return out;
   }
 
   /**
-  * Scrambles the buffer using the sha-3 keccak algorithm
+  * Compute SHAKE-<128,256> of every message in a batch with output bitlength L.
+  *
+  * @param suffix desired security level (either 128 or 256)
+  * @param X messages to be hashed
+  * @param L desired output length in bits of each message (must be a multiple of 8)
+  * @param out hash value buffer, output i is written at i * (L / 8)
+  * @return the out buffer containing the desired hash values.
   */
-  private static void keccak(long[] input) {
-    assert input.length == BUFFER_LEN;
+  public static byte[] SHAKEBatch(int suffix, byte[][] X, int L, byte[] out) {
+    if (suffix != 128 && suffix != 256)
+      throw new IllegalArgumentException("Invalid suffix.");
 
-    // Run algorithm
-    for (int i = 0; i < KECCAK_ROUNDS; i += 1) rnd(input, i);
+    batch(200 - 2 * (suffix >>> 3), 0x1F, X, L >>> 3, out);
+    return out;
+  }
+
+  /**
+  * Hash every message of a batch, whole groups of messages on the Vector API
+  * multi-state permutation when it is present, and the rest one at a time.
+  *
+  * @param rsize sponge rate in bytes
+  * @param ds the domain separation suffix
+  * @param X messages to be hashed
+  * @param out_len output bytes per message
+  * @param out output buffer, out_len bytes per message
+  */
+  private static void batch(final int rsize, final long ds, final byte[][] X, final int out_len, final byte[] out) {
+    Objects.checkFromIndexSize(0, Math.multiplyExact(X.length, out_len), out.length);
+
+    int from = 0;
+    if (VECTOR_MULTI != null) {
+      from = X.length - X.length % VECTOR_MULTI.width();
+      batchInterleaved(VECTOR_MULTI, rsize, ds, X, from, out_len, out);
+    }
+    batchSerial(rsize, ds, X, from, out_len, out);
+  }
+
+  /**
+  * Hash messages width() at a time on interleaved states (lane i of state j at
+  * i * width() + j). States that finish early keep being permuted with the rest,
+  * their output has already been copied out.
+  *
+  * @param multi the multi-state permutation
+  * @param rsize sponge rate in bytes
+  * @param ds the domain separation suffix
+  * @param X messages to be hashed
+  * @param to hash messages [0, to), a multiple of width()
+  * @param out_len output bytes per message
+  * @param out output buffer, out_len bytes per message
+  */
+  private static void batchInterleaved(final MultiPermutation multi, final int rsize, final long ds,
+                                       final byte[][] X, final int to, final int out_len, final byte[] out) {
+    final int w = multi.width();
+    assert to % w == 0;
+
+    final long[] st = new long[BUFFER_LEN * w];
+    final byte[] block = new byte[rsize];
+    final int[] absorb_blocks = new int[w];
+    final int squeeze_blocks = Math.max((out_len + rsize - 1) / rsize, 1);
+
+    for (int first = 0; first < to; first += w) {
+      Arrays.fill(st, 0);
+
+      int steps = 0;
+      for (int j = 0; j < w; j++) {
+        absorb_blocks[j] = X[first + j].length / rsize + 1;
+        steps = Math.max(steps, absorb_blocks[j] - 1 + squeeze_blocks);
+      }
+
+      for (int step = 0; step < steps; step++) {
+        // absorb the next block of each message still absorbing, the last one padded
+        for (int j = 0; j < w; j++) {
+          if (step >= absorb_blocks[j]) continue;
+          byte[] msg = X[first + j];
+          int pos = step * rsize;
+          if (msg.length - pos < rsize) {
+            Arrays.fill(block, (byte) 0);
+            System.arraycopy(msg, pos, block, 0, msg.length - pos);
+            block[msg.length - pos] ^= (byte) ds;
+            block[rsize - 1] ^= (byte) 0x80;
+            msg = block;
+            pos = 0;
+          }
+          for (int i = 0; i < (rsize >>> 3); i++)
+            st[i * w + j] ^= (long) LANE.get(msg, pos + (i << 3));
+        }
+
+        multi.permuteAll(st);
+
+        // copy out the output of each message now squeezing
+        for (int j = 0; j < w; j++) {
+          final int squeezed = (step - absorb_blocks[j] + 1) * rsize;
+          if (squeezed < 0 || squeezed >= out_len) continue;
+          final int len = Math.min(rsize, out_len - squeezed);
+          final int base = (first + j) * out_len + squeezed;
+          int k = 0;
+          for (; len - k >= 8; k += 8)
+            LANE.set(out, base + k, st[(k >>> 3) * w + j]);
+          for (; k < len; k++)
+            out[base + k] = (byte) (st[(k >>> 3) * w + j] >>> ((k & 0b111) << 3));
+        }
+      }
+    }
+  }
+
+  /**
+  * Hash messages one at a time on one reused state, with none of the per call
+  * sponge setup: whole blocks are XORed straight into the state a lane at a time,
+  * and the padding is folded into the lanes of the last partial block.
+  *
+  * @param rsize sponge rate in bytes
+  * @param ds the domain separation suffix
+  * @param X messages to be hashed
+  * @param from hash messages [from, X.length)
+  * @param out_len output bytes per message
+  * @param out output buffer, out_len bytes per message
+  */
+  private static void batchSerial(final int rsize, final long ds, final byte[][] X, final int from,
+                                  final int out_len, final byte[] out) {
+    final long[] st = new long[BUFFER_LEN];
+    final int lanes = rsize >>> 3;
+
+    for (int n = from, base = from * out_len; n < X.length; n++, base += out_len) {
+      final byte[] msg = X[n];
+      Arrays.fill(st, 0);
+
+      // full blocks
+      int pos = 0;
+      for (; msg.length - pos >= rsize; pos += rsize) {
+        for (int i = 0; i < lanes; i++)
+          st[i] ^= (long) LANE.get(msg, pos + (i << 3));
+        keccak(st);
+      }
+
+      // whole lanes of the last block, then its tail bytes and the padding
+      int i = 0;
+      for (; msg.length - pos >= 8; i++, pos += 8)
+        st[i] ^= (long) LANE.get(msg, pos);
+      long tail = ds << ((msg.length - pos) << 3);
+      for (int k = 0; pos + k < msg.length; k++)
+        tail |= (msg[pos + k] & 0xFFL) << (k << 3);
+      st[i] ^= tail;
+      st[lanes - 1] ^= 0x80L << 56;
+      keccak(st);
+
+      // squeeze
+      for (int done = 0; done < out_len; ) {
+        final int len = Math.min(rsize, out_len - done);
+        int k = 0;
+        for (; len - k >= 8; k += 8)
+          LANE.set(out, base + done + k, st[k >>> 3]);
+        for (; k < len; k++)
+          out[base + done + k] = (byte) (st[k >>> 3] >>> ((k & 0b111) << 3));
+        done += len;
+        if (done < out_len) keccak(st);
+      }
+    }
   }
 
   /**
    * Round constants for Keccak-f[1600], width = 64
    */
-  private static final long[] roundConstants = {
+  static final long[] roundConstants = {
           0x0000000000000001L, 0x0000000000008082L, 0x800000000000808AL, 0x8000000080008000L,
           0x000000000000808BL, 0x0000000080000001L, 0x8000000080008081L, 0x8000000000008009L,
           0x000000000000008AL, 0x0000000000000088L, 0x0000000080008009L, 0x000000008000000AL,
@@ -246,6 +719,227 @@ public class SHA3SHAKE {
           0x8000000080008081L, 0x8000000000008080L, 0x0000000080000001L, 0x8000000080008008L
   };
 
+  /**
+   * A Keccak-f[1600] permutation, scrambling the 25 lane state in place.
+   */
+  interface Permutation {
+    void permute(long[] st);
+  }
+
+  /**
+   * A Keccak-f[1600] permutation over width() states at once,
+   * interleaved lane by lane (lane i of state j at i * width() + j).
+   */
+  interface MultiPermutation {
+    int width();
+    void permuteAll(long[] st);
+  }
+
+  /**
+   * The table driven permutation, one round at a time through rnd.
+   */
+  static final Permutation REFERENCE = SHA3SHAKE::keccakReference;
+  /**
+   * The unrolled permutation, keeping all lanes in locals with constant rotations.
+   */
+  static final Permutation UNROLLED = SHA3SHAKE::keccakUnrolled;
+  /**
+   * The Vector API multi-state permutation from KeccakVector,
+   * null unless the jdk.incubator.vector module is present.
+   */
+  static final MultiPermutation VECTOR_MULTI;
+
+  static {
+    Object vector = null;
+    try {
+      vector = Class.forName("KeccakVector").getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException | LinkageError e) {
+      // jdk.incubator.vector was not added to the module graph, stay scalar
+    }
+    VECTOR_MULTI = (MultiPermutation) vector;
+  }
+
+  /**
+   * The permutation every sponge uses.
+   * Selected with -Dsha3shake.permutation=reference|unrolled (default unrolled).
+   */
+  private static final Permutation PERMUTATION = selectPermutation(System.getProperty("sha3shake.permutation", "unrolled"));
+
+  private static Permutation selectPermutation(final String name) {
+    return switch (name) {
+      case "reference" -> REFERENCE;
+      case "unrolled" -> UNROLLED;
+      default -> throw new IllegalArgumentException("Unknown permutation: " + name);
+    };
+  }
+
+  /**
+  * Scrambles the buffer using the sha-3 keccak algorithm
+  */
+  private static void keccak(long[] input) {
+    PERMUTATION.permute(input);
+  }
+
+  /**
+  * Scrambles this sponge's state with its permutation: Keccak-f, or the reduced round Keccak-p
+  */
+  private void permute(final long[] st) {
+    if (this.first_round == 0)
+      keccak(st);
+    else
+      keccakUnrolled(st, this.first_round);
+  }
+
+  /**
+  * Scrambles the buffer using the table driven rounds in rnd
+  */
+  private static void keccakReference(long[] input) {
+    assert input.length == BUFFER_LEN;
+
+    // Run algorithm
+    for (int i = 0; i < KECCAK_ROUNDS; i += 1) rnd(input, i);
+  }
+
+  /**
+  * Scrambles the buffer using the sha-3 keccak algorithm, with every step of
+  * a round written out so the state stays in locals and nothing is allocated.
+  * Only the round body is unrolled, the whole 24 rounds would be too large a
+  * method for the JIT to compile.
+  */
+  private static void keccakUnrolled(final long[] st) {
+    keccakUnrolled(st, 0);
+  }
+
+  /**
+  * The unrolled rounds from first_round to the last, Keccak-p[1600, 24 - first_round].
+  */
+  private static void keccakUnrolled(final long[] st, final int first_round) {
+    assert st.length == BUFFER_LEN;
+
+    long a00 = st[0];
+    long a01 = st[1];
+    long a02 = st[2];
+    long a03 = st[3];
+    long a04 = st[4];
+    long a05 = st[5];
+    long a06 = st[6];
+    long a07 = st[7];
+    long a08 = st[8];
+    long a09 = st[9];
+    long a10 = st[10];
+    long a11 = st[11];
+    long a12 = st[12];
+    long a13 = st[13];
+    long a14 = st[14];
+    long a15 = st[15];
+    long a16 = st[16];
+    long a17 = st[17];
+    long a18 = st[18];
+    long a19 = st[19];
+    long a20 = st[20];
+    long a21 = st[21];
+    long a22 = st[22];
+    long a23 = st[23];
+    long a24 = st[24];
+
+    for (int round = first_round; round < KECCAK_ROUNDS; round++) {
+      // Theta
+      final long c0 = a00 ^ a05 ^ a10 ^ a15 ^ a20;
+      final long c1 = a01 ^ a06 ^ a11 ^ a16 ^ a21;
+      final long c2 = a02 ^ a07 ^ a12 ^ a17 ^ a22;
+      final long c3 = a03 ^ a08 ^ a13 ^ a18 ^ a23;
+      final long c4 = a04 ^ a09 ^ a14 ^ a19 ^ a24;
+      final long d0 = c4 ^ Long.rotateLeft(c1, 1);
+      final long d1 = c0 ^ Long.rotateLeft(c2, 1);
+      final long d2 = c1 ^ Long.rotateLeft(c3, 1);
+      final long d3 = c2 ^ Long.rotateLeft(c4, 1);
+      final long d4 = c3 ^ Long.rotateLeft(c0, 1);
+
+      // Rho + Pi
+      final long b00 = a00 ^ d0;
+      final long b10 = Long.rotateLeft(a01 ^ d1, 1);
+      final long b20 = Long.rotateLeft(a02 ^ d2, 62);
+      final long b05 = Long.rotateLeft(a03 ^ d3, 28);
+      final long b15 = Long.rotateLeft(a04 ^ d4, 27);
+      final long b16 = Long.rotateLeft(a05 ^ d0, 36);
+      final long b01 = Long.rotateLeft(a06 ^ d1, 44);
+      final long b11 = Long.rotateLeft(a07 ^ d2, 6);
+      final long b21 = Long.rotateLeft(a08 ^ d3, 55);
+      final long b06 = Long.rotateLeft(a09 ^ d4, 20);
+      final long b07 = Long.rotateLeft(a10 ^ d0, 3);
+      final long b17 = Long.rotateLeft(a11 ^ d1, 10);
+      final long b02 = Long.rotateLeft(a12 ^ d2, 43);
+      final long b12 = Long.rotateLeft(a13 ^ d3, 25);
+      final long b22 = Long.rotateLeft(a14 ^ d4, 39);
+      final long b23 = Long.rotateLeft(a15 ^ d0, 41);
+      final long b08 = Long.rotateLeft(a16 ^ d1, 45);
+      final long b18 = Long.rotateLeft(a17 ^ d2, 15);
+      final long b03 = Long.rotateLeft(a18 ^ d3, 21);
+      final long b13 = Long.rotateLeft(a19 ^ d4, 8);
+      final long b14 = Long.rotateLeft(a20 ^ d0, 18);
+      final long b24 = Long.rotateLeft(a21 ^ d1, 2);
+      final long b09 = Long.rotateLeft(a22 ^ d2, 61);
+      final long b19 = Long.rotateLeft(a23 ^ d3, 56);
+      final long b04 = Long.rotateLeft(a24 ^ d4, 14);
+
+      // Chi
+      a00 = b00 ^ (~b01 & b02);
+      a01 = b01 ^ (~b02 & b03);
+      a02 = b02 ^ (~b03 & b04);
+      a03 = b03 ^ (~b04 & b00);
+      a04 = b04 ^ (~b00 & b01);
+      a05 = b05 ^ (~b06 & b07);
+      a06 = b06 ^ (~b07 & b08);
+      a07 = b07 ^ (~b08 & b09);
+      a08 = b08 ^ (~b09 & b05);
+      a09 = b09 ^ (~b05 & b06);
+      a10 = b10 ^ (~b11 & b12);
+      a11 = b11 ^ (~b12 & b13);
+      a12 = b12 ^ (~b13 & b14);
+      a13 = b13 ^ (~b14 & b10);
+      a14 = b14 ^ (~b10 & b11);
+      a15 = b15 ^ (~b16 & b17);
+      a16 = b16 ^ (~b17 & b18);
+      a17 = b17 ^ (~b18 & b19);
+      a18 = b18 ^ (~b19 & b15);
+      a19 = b19 ^ (~b15 & b16);
+      a20 = b20 ^ (~b21 & b22);
+      a21 = b21 ^ (~b22 & b23);
+      a22 = b22 ^ (~b23 & b24);
+      a23 = b23 ^ (~b24 & b20);
+      a24 = b24 ^ (~b20 & b21);
+
+      // Iota
+      a00 ^= roundConstants[round];
+    }
+
+    st[0] = a00;
+    st[1] = a01;
+    st[2] = a02;
+    st[3] = a03;
+    st[4] = a04;
+    st[5] = a05;
+    st[6] = a06;
+    st[7] = a07;
+    st[8] = a08;
+    st[9] = a09;
+    st[10] = a10;
+    st[11] = a11;
+    st[12] = a12;
+    st[13] = a13;
+    st[14] = a14;
+    st[15] = a15;
+    st[16] = a16;
+    st[17] = a17;
+    st[18] = a18;
+    st[19] = a19;
+    st[20] = a20;
+    st[21] = a21;
+    st[22] = a22;
+    st[23] = a23;
+    st[24] = a24;
+  }
+
   /**
    * Rotating Offset for Rho
    */
@@ -0,0 +1,285 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.ProtocolException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A long running service for hash, MAC, encrypt, decrypt, sign and verify
+ * requests, so JVM start up, class initialization (G and its tables) and JIT
+ * warm up are paid once rather than per operation.
+ *
+ * Every message, either way, is a frame: a 4-byte big-endian length and then
+ * that many bytes. A connection carries any number of request and response pairs.
+ * A request is an op code byte then its fields. A response is a status byte,
+ * then its fields when OK, or a UTF-8 message on ERROR. A field is a 4-byte
+ * big-endian length then its bytes; integers are 4-byte fields.
+ *
+ *   HASH    sec, message                      -> digest
+ *   MAC     sec, bits, key, message           -> SHAKE-sec(key || message), bits long
+ *   ENCRYPT public key, message               -> ciphertext
+ *   DECRYPT private key, ciphertext           -> message
+ *   SIGN    password, message                 -> signature
+ *   VERIFY  public key, signature, message    -> one byte, 1 when valid
+ *   KMAC    sec, bits, key, custom, message   -> KMAC-sec(key, message, bits, custom)
+ *
+ * Keys, ciphertexts and signatures are in the binary file formats of Formats.
+ */
+final class Server {
+  static final byte HASH = 1;
+  static final byte MAC = 2;
+  static final byte ENCRYPT = 3;
+  static final byte DECRYPT = 4;
+  static final byte SIGN = 5;
+  static final byte VERIFY = 6;
+  static final byte KMAC_OP = 7; // not KMAC, which would obscure the class
+
+  static final byte OK = 0;
+  static final byte ERROR = 1;
+
+  /**
+   * The largest frame accepted, sized with -Dsha3shake.maxframe=<bytes>.
+   * Every connection may hold a frame this big, so it bounds memory with MAX_CONNECTIONS.
+   */
+  static final int MAX_FRAME = Integer.getInteger("sha3shake.maxframe", 1 << 20);
+  /**
+   * The most connections served at once, set with -Dsha3shake.maxconnections=<n>;
+   * further clients wait in the listen backlog until one closes.
+   */
+  static final int MAX_CONNECTIONS = Integer.getInteger("sha3shake.maxconnections", 64);
+
+  private static final SecureRandom RANDOM = new SecureRandom();
+
+  private Server() {}
+
+  /**
+   * Accept connections until the channel is closed, serving each on its own pool thread,
+   * at most MAX_CONNECTIONS at a time. A failed accept (say, out of file descriptors)
+   * is logged and only costs that one connection.
+   */
+  static void serve(final ServerSocketChannel server, final ExecutorService pool) throws IOException {
+    final Semaphore slots = new Semaphore(MAX_CONNECTIONS);
+    while (server.isOpen()) {
+      slots.acquireUninterruptibly();
+      final SocketChannel client;
+      try {
+        client = server.accept();
+      } catch (ClosedChannelException e) {
+        return;
+      } catch (IOException e) {
+        slots.release();
+        System.err.printf("accept: %s\n", e);
+        pause();
+        continue;
+      }
+      try {
+        pool.execute(() -> {
+          try (client) {
+            connection(client);
+          } catch (IOException e) {
+            System.err.printf("serve: %s\n", e);
+          } finally {
+            slots.release();
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        slots.release();
+        client.close();
+        System.err.printf("serve: %s\n", e);
+      }
+    }
+  }
+
+  /**
+   * Back off briefly after a failed accept, so a persistent failure does not spin.
+   */
+  private static void pause() {
+    try {
+      Thread.sleep(100);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Answer requests on a connection until the client closes it.
+   */
+  static void connection(final SocketChannel client) throws IOException {
+    final DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(client)));
+    final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(client)));
+
+    while (true) {
+      final int len;
+      try {
+        len = in.readInt();
+      } catch (EOFException e) {
+        return;
+      }
+      if (len < 1 || len > MAX_FRAME) throw new ProtocolException("bad frame length " + len);
+      final byte[] request = new byte[len];
+      in.readFully(request);
+
+      byte status = OK;
+      byte[][] fields;
+      try {
+        fields = handle(ByteBuffer.wrap(request));
+      } catch (IOException | RuntimeException e) {
+        status = ERROR;
+        final String message = e.getMessage() != null ? e.getMessage() : e.getClass().getName();
+        fields = new byte[][] { message.getBytes(StandardCharsets.UTF_8) };
+      }
+
+      int size = 1;
+      for (final byte[] field : fields) size += (status == OK ? 4 : 0) + field.length;
+      out.writeInt(size);
+      out.writeByte(status);
+      for (final byte[] field : fields) {
+        if (status == OK) out.writeInt(field.length);
+        out.write(field);
+      }
+      out.flush();
+    }
+  }
+
+  /**
+   * Carry out one request.
+   *
+   * @return the response fields
+   */
+  static byte[][] handle(final ByteBuffer request) throws IOException {
+    final byte op = request.get();
+    return switch (op) {
+      case HASH -> {
+        final SHA3SHAKE sha = SHA3SHAKE.local(intField(request), false);
+        sha.absorb(field(request));
+        yield new byte[][] { sha.digest() };
+      }
+      case MAC -> {
+        final SHA3SHAKE shake = SHA3SHAKE.local(intField(request), true);
+        try {
+          final int bits = intField(request);
+          if (bits < 0 || (bits & 0b111) != 0 || bits >> 3 > MAX_FRAME) throw new IllegalArgumentException("Invalid MAC length: " + bits);
+          shake.absorb(field(request));
+          shake.absorb(field(request));
+          yield new byte[][] { shake.squeeze(bits >> 3) };
+        } finally {
+          shake.wipe(); // it has absorbed the key
+        }
+      }
+      case ENCRYPT -> {
+        final ByteBuffer key = Formats.checkHeader(ByteBuffer.wrap(field(request)), Formats.PUBLIC_KEY, Formats.POINT_BYTES);
+        yield new byte[][] { encrypt(Formats.getPoint(key, true), field(request)) };
+      }
+      case DECRYPT -> {
+        final ByteBuffer key = Formats.checkHeader(ByteBuffer.wrap(field(request)), Formats.PRIVATE_KEY, Formats.SCALAR_BYTES);
+        yield new byte[][] { decrypt(Formats.getScalar(key).mod(Edwards.r), field(request)) };
+      }
+      case SIGN -> {
+        final Edwards.Key key = Edwards.getKey(field(request));
+        yield new byte[][] { sign(key.s(), field(request)) };
+      }
+      case VERIFY -> {
+        final ByteBuffer key = Formats.checkHeader(ByteBuffer.wrap(field(request)), Formats.PUBLIC_KEY, Formats.POINT_BYTES);
+        final Edwards.Point V = Formats.getPoint(key, true);
+        final ByteBuffer sig = Formats.checkHeader(ByteBuffer.wrap(field(request)), Formats.SIGNATURE, Formats.SCALAR_BYTES << 1);
+        final BigInteger h = Formats.getScalar(sig);
+        final BigInteger z = Formats.getScalar(sig);
+        yield new byte[][] { { (byte) (Edwards.verify(V, h, z, field(request)) ? 1 : 0) } };
+      }
+      case KMAC_OP -> {
+        final int sec = intField(request);
+        final int bits = intField(request);
+        if (bits < 0 || (bits & 0b111) != 0 || bits >> 3 > MAX_FRAME) throw new IllegalArgumentException("Invalid MAC length: " + bits);
+        // a gateway MACs with a few keys over and over, their key setup is cached
+        final KMAC kmac = KMAC.KEY_CACHE.get(sec, field(request), field(request));
+        final SHA3SHAKE sponge = kmac.begin(SHA3SHAKE.local(sec, true));
+        try {
+          sponge.absorb(field(request));
+          yield new byte[][] { KMAC.finish(sponge, new byte[bits >> 3], bits >> 3, false) };
+        } finally {
+          sponge.wipe();
+        }
+      }
+      default -> throw new ProtocolException("unknown op " + op);
+    };
+  }
+
+  static byte[] field(final ByteBuffer request) throws ProtocolException {
+    try {
+      final int len = request.getInt();
+      if (len < 0 || len > request.remaining()) throw new ProtocolException("bad field length " + len);
+      final byte[] field = new byte[len];
+      request.get(field);
+      return field;
+    } catch (BufferUnderflowException e) {
+      throw new ProtocolException("truncated request");
+    }
+  }
+
+  static int intField(final ByteBuffer request) throws ProtocolException {
+    final byte[] field = field(request);
+    if (field.length != 4) throw new ProtocolException("bad integer field");
+    return ByteBuffer.wrap(field).getInt();
+  }
+
+  /**
+   * ec-encrypt in memory, to the binary ciphertext format.
+   */
+  static byte[] encrypt(final Edwards.Point V, final byte[] m) {
+    final Edwards.Envelope envelope = Edwards.Envelope.seal(V, RANDOM);
+    final ByteBuffer out = Formats.newHeader(Formats.CIPHERTEXT, Formats.POINT_BYTES + Formats.TAG_BYTES + m.length);
+    Formats.putPoint(out, envelope.Z);
+    final int t_pos = out.position();
+    final int c_pos = t_pos + Formats.TAG_BYTES;
+
+    final byte[] ct = out.array();
+    System.arraycopy(m, 0, ct, c_pos, m.length);
+    envelope.encrypt(ct, c_pos, m.length);
+    System.arraycopy(envelope.tag(), 0, ct, t_pos, Formats.TAG_BYTES);
+    return ct;
+  }
+
+  /**
+   * ec-decrypt in memory, from the binary ciphertext format.
+   */
+  static byte[] decrypt(final BigInteger s, final byte[] ciphertext) throws IOException {
+    final ByteBuffer in = Formats.checkHeader(ByteBuffer.wrap(ciphertext), Formats.CIPHERTEXT,
+        Formats.POINT_BYTES + Formats.TAG_BYTES);
+    final Edwards.Envelope envelope = Edwards.Envelope.open(s, Formats.getPoint(in, false));
+    final byte[] t = new byte[Formats.TAG_BYTES];
+    in.get(t);
+    final byte[] m = Arrays.copyOfRange(ciphertext, in.position(), ciphertext.length);
+
+    envelope.authenticate(m, 0, m.length);
+    if (!envelope.check(t)) {
+      throw new IOException("Decryption error, authentication mismatch.");
+    }
+    envelope.decrypt(m, 0, m.length);
+    return m;
+  }
+
+  /**
+   * ec-sign in memory, to the binary signature format.
+   */
+  static byte[] sign(final BigInteger s, final byte[] m) {
+    final Edwards.Signature signature = Edwards.sign(s, m, RANDOM);
+    final ByteBuffer sig = Formats.newHeader(Formats.SIGNATURE, Formats.SCALAR_BYTES << 1);
+    Formats.putScalar(Formats.putScalar(sig, signature.h()), signature.z());
+    return sig.array();
+  }
+}
@@ -0,0 +1,107 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * A seekable SHAKE keystream in counter mode.
+ *
+ * Block i of the keystream is the first BLOCK_BYTES bytes of
+ * SHAKE(key || nonce || i), with i as 8 big-endian bytes. The nonce is
+ * fresh for every message, so one key never yields the same keystream twice.
+ * Every block stands alone, so blocks can be produced in parallel and any
+ * offset reached without generating the prefix.
+ */
+final class ShakeCTR {
+  /**
+   * log2 of the keystream produced per counter value.
+   */
+  static final int BLOCK_SHIFT = 16;
+  static final int BLOCK_BYTES = 1 << BLOCK_SHIFT;
+  static final int NONCE_BYTES = 16;
+
+  /**
+   * A snapshot of the sponge with the key and nonce absorbed, every block starts from it
+   */
+  private final SHA3SHAKE prefix;
+
+  /**
+   * @param sec the security level, 128 or 256
+   * @param key the key
+   * @param nonce the NONCE_BYTES nonce of this message
+   */
+  ShakeCTR(final int sec, final byte[] key, final byte[] nonce) {
+    if (sec != 128 && sec != 256) throw new IllegalArgumentException("Invalid security level: " + sec);
+    if (nonce.length != NONCE_BYTES) throw new IllegalArgumentException("Invalid nonce length: " + nonce.length);
+    this.prefix = new SHA3SHAKE();
+    this.prefix.init(sec, true);
+    this.prefix.absorb(key);
+    this.prefix.absorb(nonce);
+  }
+
+  /**
+   * XOR len bytes of data, starting at pos, with the keystream from offset on.
+   *
+   * @param offset the keystream offset of data[pos]
+   */
+  void xor(long offset, final byte[] data, int pos, int len) {
+    if (offset < 0) throw new IllegalArgumentException("Negative keystream offset.");
+    final byte[] ks = new byte[Math.min(len, BLOCK_BYTES)];
+    final byte[] counter = new byte[8];
+    final SHA3SHAKE sponge = new SHA3SHAKE();
+
+    while (len > 0) {
+      final long block = offset >>> BLOCK_SHIFT;
+      final int within = (int) (offset & (BLOCK_BYTES - 1));
+      final int n = Math.min(len, BLOCK_BYTES - within);
+
+      for (int i = 0; i < 8; i++) counter[i] = (byte) (block >>> (56 - (i << 3)));
+      sponge.set(this.prefix);
+      sponge.absorb(counter);
+
+      // discard the part of the block before offset
+      for (int skip = within; skip > 0; skip -= ks.length) {
+        sponge.squeeze(ks, 0, Math.min(skip, ks.length));
+      }
+      for (int done = 0; done < n; done += ks.length) {
+        final int m = Math.min(n - done, ks.length);
+        sponge.squeeze(ks, 0, m);
+        for (int i = 0; i < m; i++) data[pos + done + i] ^= ks[i];
+      }
+
+      offset += n;
+      pos += n;
+      len -= n;
+    }
+  }
+
+  /**
+   * XOR as xor does, one task per keystream block on the pool.
+   */
+  void xor(final long offset, final byte[] data, final int pos, final int len, final ForkJoinPool pool) {
+    final List<Callable<Void>> tasks = new ArrayList<>();
+    for (int done = 0; done < len; ) {
+      final long o = offset + done;
+      final int p = pos + done;
+      final int n = (int) Math.min(len - done, BLOCK_BYTES - (o & (BLOCK_BYTES - 1)));
+      tasks.add(() -> {
+        xor(o, data, p, n);
+        return null;
+      });
+      done += n;
+    }
+
+    for (final Future<Void> task : pool.invokeAll(tasks)) {
+      try {
+        task.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException(e);
+      } catch (ExecutionException e) {
+        throw new IllegalStateException(e.getCause());
+      }
+    }
+  }
+}
@@ -0,0 +1,104 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Objects;
+import java.util.random.RandomGenerator;
+
+/**
+ * The endless output of a SHAKE sponge, as a stream, a channel, or a random generator.
+ *
+ * Every read squeezes straight into the caller's array or buffer, so any amount
+ * of output is produced in constant memory. The same seed always gives the same bytes,
+ * however the reads are sized.
+ */
+public final class ShakeStream extends InputStream implements ReadableByteChannel, RandomGenerator {
+  private final SHA3SHAKE sponge;
+  private final byte[] word = new byte[8];
+  private boolean open = true;
+
+  /**
+   * Stream SHAKE-sec of seed.
+   *
+   * @param sec the security level, 128 or 256
+   * @param seed the input to SHAKE
+   */
+  public ShakeStream(final int sec, final byte[] seed) {
+    this.sponge = new SHA3SHAKE();
+    this.sponge.init(sec, true);
+    this.sponge.absorb(seed);
+  }
+
+  /**
+   * Stream the output of a SHAKE sponge that has absorbed all of its input.
+   * The sponge must not be used elsewhere afterwards.
+   */
+  public ShakeStream(final SHA3SHAKE sponge) {
+    this.sponge = Objects.requireNonNull(sponge);
+  }
+
+  @Override
+  public int read() throws IOException {
+    ensureOpen();
+    return this.sponge.squeeze(this.word, 0, 1)[0] & 0xff;
+  }
+
+  /**
+   * Squeeze exactly len bytes into b at off; never short, never at the end.
+   */
+  @Override
+  public int read(final byte[] b, final int off, final int len) throws IOException {
+    ensureOpen();
+    this.sponge.squeeze(b, off, len);
+    return len;
+  }
+
+  /**
+   * Fill the remainder of dst.
+   */
+  @Override
+  public int read(final ByteBuffer dst) throws ClosedChannelException {
+    if (!this.open) throw new ClosedChannelException();
+    final int len = dst.remaining();
+    this.sponge.squeeze(dst);
+    return len;
+  }
+
+  @Override
+  public long skip(final long n) throws IOException {
+    ensureOpen();
+    final byte[] scratch = new byte[(int) Math.min(Math.max(n, 0), 1 << 13)];
+    for (long left = n; left > 0; left -= scratch.length) {
+      this.sponge.squeeze(scratch, 0, (int) Math.min(left, scratch.length));
+    }
+    return Math.max(n, 0);
+  }
+
+  @Override
+  public long nextLong() {
+    this.sponge.squeeze(this.word, 0, 8);
+    long v = 0;
+    for (int i = 7; i >= 0; i--) v = (v << 8) | (this.word[i] & 0xff);
+    return v;
+  }
+
+  @Override
+  public void nextBytes(final byte[] bytes) {
+    this.sponge.squeeze(bytes, 0, bytes.length);
+  }
+
+  @Override
+  public boolean isOpen() {
+    return this.open;
+  }
+
+  @Override
+  public void close() {
+    this.open = false;
+  }
+
+  private void ensureOpen() throws IOException {
+    if (!this.open) throw new IOException("stream closed");
+  }
+}
@@ -0,0 +1,212 @@
+import java.lang.management.ManagementFactory;
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Microbenchmarks for the SHA3SHAKE and Edwards hot paths.
+ *
+ * usage: java Bench [FILTER]...
+ *
+ * Runs every benchmark whose name contains one of the filters (all without any).
+ * Each one is warmed up, then timed over several iterations, and reported as
+ * time per operation, throughput where it processes bytes, and heap bytes
+ * allocated per operation (what a GC profiler would attribute to it).
+ *
+ * Tuned with -Dbench.warmup=<ms>, -Dbench.time=<ms> (per iteration)
+ * and -Dbench.iterations=<n>.
+ */
+public class Bench {
+  static final long WARMUP_MS = Long.getLong("bench.warmup", 1000);
+  static final long TIME_MS = Long.getLong("bench.time", 1000);
+  static final int ITERATIONS = Integer.getInteger("bench.iterations", 5);
+
+  static final int[] SIZES = { 16, 1 << 10, 1 << 16, 1 << 20 };
+
+  /**
+   * Results go here so the JIT cannot drop the work that made them.
+   */
+  static volatile Object sink;
+
+  /**
+   * A benchmark: bytes processed per operation (0 if not meaningful), and the operation.
+   */
+  record Case(String name, long bytes, Supplier<Object> op) {}
+
+  public static void main(String[] args) {
+    final List<Case> cases = new ArrayList<>();
+    sha3Cases(cases);
+    kmacCases(cases);
+    keccakCases(cases);
+    edwardsCases(cases);
+
+    final com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    System.out.printf("%-32s %14s %10s %12s %14s\n", "benchmark", "ns/op", "+-", "MB/s", "B/op alloc");
+    for (final Case c : cases) {
+      if (!matches(c.name(), args)) continue;
+
+      run(c.op(), WARMUP_MS);
+
+      final double[] ns = new double[ITERATIONS];
+      long alloc_bytes = 0;
+      long ops = 0;
+      for (int i = 0; i < ITERATIONS; i++) {
+        final long alloc_start = threads.getCurrentThreadAllocatedBytes();
+        final long start = System.nanoTime();
+        final long n = run(c.op(), TIME_MS);
+        ns[i] = (double) (System.nanoTime() - start) / n;
+        alloc_bytes += threads.getCurrentThreadAllocatedBytes() - alloc_start;
+        ops += n;
+      }
+
+      double mean = 0;
+      for (final double v : ns) mean += v / ns.length;
+      double var = 0;
+      for (final double v : ns) var += (v - mean) * (v - mean) / Math.max(ns.length - 1, 1);
+
+      System.out.printf("%-32s %14.1f %10.1f %12s %14d\n",
+          c.name(), mean, Math.sqrt(var),
+          c.bytes() == 0 ? "" : String.format("%.1f", c.bytes() * 1e3 / mean),
+          alloc_bytes / ops);
+    }
+  }
+
+  static boolean matches(final String name, final String[] filters) {
+    if (filters.length == 0) return true;
+    for (final String f : filters) {
+      if (name.contains(f)) return true;
+    }
+    return false;
+  }
+
+  /**
+   * Run op in batches until at least ms milliseconds have passed.
+   *
+   * @return the number of operations run
+   */
+  static long run(final Supplier<Object> op, final long ms) {
+    final long end = System.nanoTime() + ms * 1_000_000;
+    long n = 0;
+    int batch = 1;
+    do {
+      for (int i = 0; i < batch; i++) sink = op.get();
+      n += batch;
+      if (batch < 1 << 16) batch <<= 1;
+    } while (System.nanoTime() < end);
+    return n;
+  }
+
+  static byte[] randomBytes(final int len) {
+    final byte[] bytes = new byte[len];
+    new Random(len).nextBytes(bytes);
+    return bytes;
+  }
+
+  static void sha3Cases(final List<Case> cases) {
+    for (final int size : SIZES) {
+      final byte[] msg = randomBytes(size);
+      final byte[] digest = new byte[32];
+      cases.add(new Case("sha3-256/" + size, size, () -> SHA3SHAKE.SHA3(256, msg, digest)));
+    }
+    for (final int size : SIZES) {
+      final byte[] msg = randomBytes(size);
+      final byte[] out = new byte[32];
+      cases.add(new Case("shake128/" + size, size, () -> SHA3SHAKE.SHAKE(128, msg, out.length << 3, out)));
+      cases.add(new Case("shake256/" + size, size, () -> SHA3SHAKE.SHAKE(256, msg, out.length << 3, out)));
+    }
+
+    // streaming: one long lived sponge, measuring only the absorb or squeeze call
+    for (final int size : SIZES) {
+      final byte[] msg = randomBytes(size);
+      final SHA3SHAKE sponge = new SHA3SHAKE();
+      sponge.init(256);
+      cases.add(new Case("absorb/sha3-256/" + size, size, () -> {
+        sponge.absorb(msg);
+        return sponge;
+      }));
+    }
+    for (final int size : SIZES) {
+      final byte[] out = new byte[size];
+      final SHA3SHAKE sponge = new SHA3SHAKE();
+      sponge.init(128, true);
+      sponge.absorb(randomBytes(32));
+      cases.add(new Case("squeeze/shake128/" + size, size, () -> sponge.squeeze(out, 0, out.length)));
+    }
+  }
+
+  static void kmacCases(final List<Case> cases) {
+    final byte[] key = randomBytes(32);
+    final byte[] custom = "bench".getBytes();
+    final byte[] msg = randomBytes(1 << 10);
+    final byte[] mac = new byte[32];
+
+    // key setup on every message, against a KMAC made once and reused
+    cases.add(new Case("kmac256/new-key/" + msg.length, msg.length, () -> new KMAC(256, key, custom).mac(msg, mac.length)));
+    final KMAC kmac = KMAC.KEY_CACHE.get(256, key, custom);
+    final SHA3SHAKE sponge = new SHA3SHAKE();
+    cases.add(new Case("kmac256/cached-key/" + msg.length, msg.length, () -> {
+      kmac.begin(sponge).absorb(msg);
+      return KMAC.finish(sponge, mac, mac.length, false);
+    }));
+  }
+
+  static void keccakCases(final List<Case> cases) {
+    final long[] st = new long[25];
+    cases.add(new Case("keccak/reference", 200, () -> {
+      SHA3SHAKE.REFERENCE.permute(st);
+      return st;
+    }));
+    cases.add(new Case("keccak/unrolled", 200, () -> {
+      SHA3SHAKE.UNROLLED.permute(st);
+      return st;
+    }));
+    if (SHA3SHAKE.VECTOR_MULTI != null) {
+      // every state of the interleaved permutation is a full permutation's worth of work
+      final SHA3SHAKE.MultiPermutation multi = SHA3SHAKE.VECTOR_MULTI;
+      final long[] sts = new long[25 * multi.width()];
+      cases.add(new Case("keccak/vector-x" + multi.width(), 200L * multi.width(), () -> {
+        multi.permuteAll(sts);
+        return sts;
+      }));
+    }
+  }
+
+  static void edwardsCases(final List<Case> cases) {
+    final SecureRandom random = new SecureRandom();
+    final BigInteger k = Edwards.randomScalar(random);
+    final BigInteger k2 = Edwards.randomScalar(random);
+    final Edwards.Point P = Edwards.G.mul(k);
+    final Edwards.Point Q = Edwards.G.mul(k2);
+
+    cases.add(new Case("point/add", 0, () -> P.add(Q)));
+    cases.add(new Case("point/mul/fixed-base", 0, () -> Edwards.G.mul(k2)));
+    cases.add(new Case("point/mul/variable-base", 0, () -> P.mul(k2)));
+    cases.add(new Case("point/mulAdd", 0, () -> Edwards.G.mulAdd(k, k2, P)));
+    cases.add(new Case("point/getPoint", 0, () -> Edwards.getPoint(P.y, P.x.testBit(0))));
+    cases.add(new Case("point/getPoint/cached", 0, () -> Edwards.KEY_CACHE.get(P.y, P.x.testBit(0))));
+
+    final Edwards.Key key = Edwards.getKey("password".getBytes());
+    final byte[] message = randomBytes(1 << 10);
+    cases.add(new Case("ec/encrypt/" + message.length, message.length, () -> encrypt(key.V(), message, random)));
+
+    cases.add(new Case("ec/sign/" + message.length, message.length, () -> Edwards.sign(key.s(), message, random)));
+    final Edwards.Signature sig = Edwards.sign(key.s(), message, random);
+    cases.add(new Case("ec/verify/" + message.length, message.length,
+        () -> Edwards.verify(key.V(), sig.h(), sig.z(), message)));
+  }
+
+  /**
+   * In memory ec-encrypt: Z, then c and t under the keys derived from W = kV.
+   */
+  static Object encrypt(final Edwards.Point V, final byte[] m, final SecureRandom random) {
+    final Edwards.Envelope envelope = Edwards.Envelope.seal(V, random);
+    final byte[] c = m.clone();
+    envelope.encrypt(c, 0, c.length);
+    return new Object[] { envelope.Z, c, envelope.tag() };
+  }
+}
@@ -0,0 +1,419 @@
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Known-answer and cross checks for the arithmetic and hash modes that the
+ * justfile diffs against the C sha3 binary cannot reach.
+ *
+ * usage: java -ea Checks (from the repository root, which holds the NIST vectors)
+ *
+ * Prints every failed check and exits 1 if there was any.
+ */
+public class Checks {
+  static int checks = 0;
+  static int failures = 0;
+
+  public static void main(String[] args) throws IOException {
+    katChecks();
+    edwardsChecks();
+    treeHashChecks();
+    kmacChecks();
+
+    System.out.printf("%d checks, %d failed\n", checks, failures);
+    if (failures != 0) System.exit(1);
+  }
+
+  static void check(final String name, final boolean ok) {
+    checks++;
+    if (!ok) {
+      failures++;
+      System.out.printf("FAILED: %s\n", name);
+    }
+  }
+
+  static boolean same(final Edwards.Point P, final Ref Q) {
+    return P.x == null ? Q.x() == null : P.x.equals(Q.x()) && P.y.equals(Q.y());
+  }
+
+  /**
+   * The affine BigInteger point arithmetic of the original Edwards class:
+   * the Edwards addition law with two inversions, double-and-add and
+   * decompression through an inverse and a square root.
+   */
+  record Ref(BigInteger x, BigInteger y) {
+    static final BigInteger p = Edwards.p;
+    static final BigInteger d = Edwards.d;
+    static final Ref O = new Ref(BigInteger.ZERO, BigInteger.ONE);
+
+    static Ref of(final Edwards.Point P) {
+      return new Ref(P.x, P.y);
+    }
+
+    Ref add(final Ref P) {
+      final BigInteger xy = this.x.multiply(P.x).multiply(this.y).multiply(P.y);
+      final BigInteger x3 = this.x.multiply(P.y).add(this.y.multiply(P.x))
+          .multiply(BigInteger.ONE.add(d.multiply(xy)).modInverse(p)).mod(p);
+      final BigInteger y3 = this.y.multiply(P.y).subtract(this.x.multiply(P.x))
+          .multiply(BigInteger.ONE.subtract(d.multiply(xy)).modInverse(p)).mod(p);
+      return new Ref(x3, y3);
+    }
+
+    Ref mul(BigInteger m) {
+      m = m.mod(Edwards.r);
+      Ref V = O;
+      for (int i = m.bitLength() - 1; i >= 0; i--) {
+        V = V.add(V);
+        if (m.testBit(i)) V = V.add(this);
+      }
+      return V;
+    }
+
+    static Ref getPoint(BigInteger y, final boolean x_lsb) {
+      y = y.mod(p);
+      final BigInteger ny2 = y.modPow(BigInteger.TWO, p).negate().mod(p);
+      final BigInteger a1 = ny2.add(BigInteger.ONE).mod(p);
+      final BigInteger a2 = ny2.multiply(d).add(BigInteger.ONE).mod(p);
+      final BigInteger v = a1.multiply(a2.modInverse(p)).mod(p);
+      if (v.signum() == 0) return new Ref(BigInteger.ZERO, y);
+      BigInteger x = v.modPow(p.shiftRight(2).add(BigInteger.ONE), p);
+      if (x.testBit(0) != x_lsb) x = p.subtract(x);
+      return new Ref(x.multiply(x).subtract(v).mod(p).signum() == 0 ? x : null, y);
+    }
+  }
+
+  /**
+   * A NIST CAVP vector: a message and its digest or SHAKE output.
+   */
+  record Kat(byte[] msg, byte[] md) {}
+
+  /**
+   * The records of a CAVP .rsp file, with Len (in bits) cutting Msg down to
+   * its message, so the empty message's placeholder "00" is dropped.
+   */
+  static List<Kat> readKats(final Path rsp) throws IOException {
+    final List<Kat> kats = new ArrayList<>();
+    int len = -1;
+    byte[] msg = null;
+    for (final String line : Files.readAllLines(rsp)) {
+      final String[] field = line.split(" = ");
+      if (field.length != 2) continue;
+      switch (field[0]) {
+        case "Len" -> len = Integer.parseInt(field[1]);
+        case "Msg" -> msg = Hex.decode(field[1]);
+        case "MD", "Output" -> {
+          kats.add(new Kat(len < 0 ? msg : Arrays.copyOf(msg, len >>> 3), Hex.decode(field[1])));
+          len = -1;
+        }
+        default -> {}
+      }
+    }
+    return kats;
+  }
+
+  /**
+   * The NIST SHA-3 and SHAKE byte-oriented vectors in sha3test and shaketest.
+   * Every vector is hashed four ways: the one-shots, arrays absorbed and
+   * squeezed in uneven chunks, direct buffers, and the batch APIs grouped by
+   * output length. The sponges run the permutation -Dsha3shake.permutation
+   * selects, and the batches the Vector API engine when the incubator module
+   * is present. The Monte Carlo chains go through the one-shots.
+   */
+  static void katChecks() throws IOException {
+    final Random random = new Random(202);
+    final List<Path> files = new ArrayList<>();
+    for (final String dir : new String[] { "sha3test", "shaketest" }) {
+      try (var list = Files.list(Path.of(dir))) {
+        list.filter(f -> f.toString().endsWith(".rsp")).sorted().forEach(files::add);
+      }
+    }
+    check("NIST vector files found", files.size() == 20);
+
+    for (final Path file : files) {
+      final String name = file.getFileName().toString();
+      final boolean shake = name.startsWith("SHAKE");
+      final int suffix = Integer.parseInt(name.replaceAll("^SHA3_|^SHAKE|[A-Za-z]+\\.rsp$", ""));
+      if (name.contains("Monte")) {
+        monteChecks(file, suffix, shake);
+        continue;
+      }
+
+      final List<Kat> kats = readKats(file);
+      int one_shot = 0, chunked = 0, direct = 0, batch = 0;
+      final Map<Integer, List<Kat>> by_length = new TreeMap<>();
+      for (final Kat kat : kats) {
+        final int n = kat.md().length;
+        by_length.computeIfAbsent(n, k -> new ArrayList<>()).add(kat);
+
+        final byte[] out = shake ? SHA3SHAKE.SHAKE(suffix, kat.msg(), n << 3, new byte[n])
+                                 : SHA3SHAKE.SHA3(suffix, kat.msg(), new byte[n]);
+        if (!Arrays.equals(out, kat.md())) one_shot++;
+
+        final SHA3SHAKE sponge = new SHA3SHAKE();
+        sponge.init(suffix, shake);
+        for (int pos = 0; pos < kat.msg().length; ) {
+          final int piece = Math.min(random.nextInt(400), kat.msg().length - pos);
+          sponge.absorb(kat.msg(), pos, piece);
+          pos += piece;
+        }
+        final byte[] chunks = new byte[n];
+        if (shake) {
+          for (int pos = 0; pos < n; ) {
+            final int piece = Math.min(random.nextInt(200), n - pos);
+            sponge.squeeze(chunks, pos, piece);
+            pos += piece;
+          }
+        } else {
+          sponge.digest(chunks);
+        }
+        if (!Arrays.equals(chunks, kat.md())) chunked++;
+
+        sponge.init(suffix, shake);
+        sponge.absorb(ByteBuffer.allocateDirect(kat.msg().length).put(kat.msg()).flip());
+        final byte[] buffered = new byte[n];
+        if (shake) {
+          sponge.squeeze(ByteBuffer.allocateDirect(n)).flip().get(buffered);
+        } else {
+          sponge.digest(buffered);
+        }
+        if (!Arrays.equals(buffered, kat.md())) direct++;
+      }
+
+      for (final Map.Entry<Integer, List<Kat>> group : by_length.entrySet()) {
+        final int n = group.getKey();
+        final byte[][] X = group.getValue().stream().map(Kat::msg).toArray(byte[][]::new);
+        final byte[] out = new byte[X.length * n];
+        if (shake) {
+          SHA3SHAKE.SHAKEBatch(suffix, X, n << 3, out);
+        } else {
+          SHA3SHAKE.SHA3Batch(suffix, X, out);
+        }
+        for (int i = 0; i < X.length; i++) {
+          if (!Arrays.equals(out, i * n, (i + 1) * n, group.getValue().get(i).md(), 0, n)) batch++;
+        }
+      }
+
+      check(name + " vectors read", kats.size() > 0);
+      check(name + " one-shot, " + one_shot + " of " + kats.size() + " wrong", one_shot == 0);
+      check(name + " chunked, " + chunked + " of " + kats.size() + " wrong", chunked == 0);
+      check(name + " direct buffer, " + direct + " of " + kats.size() + " wrong", direct == 0);
+      check(name + " batch, " + batch + " of " + kats.size() + " wrong", batch == 0);
+    }
+  }
+
+  /**
+   * A SHA-3 or SHAKE Monte Carlo file: 100 checkpoints, each 1000 chained hashes
+   * on from the last. A SHAKE chain hashes the first 16 bytes of each output, and
+   * takes the next output length from its last two bytes.
+   */
+  static void monteChecks(final Path file, final int suffix, final boolean shake) throws IOException {
+    final List<String> lines = Files.readAllLines(file);
+    final List<byte[]> expected = new ArrayList<>();
+    byte[] md = null;
+    int min_bytes = 0, max_bytes = 0;
+    for (final String line : lines) {
+      final String[] field = line.replaceAll("[\\[\\]]", "").split(" = ");
+      if (field.length != 2) continue;
+      switch (field[0]) {
+        case "Seed", "Msg" -> md = Hex.decode(field[1]);
+        case "MD", "Output" -> expected.add(Hex.decode(field[1]));
+        case "Minimum Output Length (bits)" -> min_bytes = Integer.parseInt(field[1]) >>> 3;
+        case "Maximum Output Length (bits)" -> max_bytes = Integer.parseInt(field[1]) >>> 3;
+        default -> {}
+      }
+    }
+
+    int wrong = 0;
+    int out_bytes = max_bytes;
+    for (final byte[] checkpoint : expected) {
+      for (int i = 0; i < 1000; i++) {
+        if (shake) {
+          md = SHA3SHAKE.SHAKE(suffix, Arrays.copyOf(md, 16), out_bytes << 3, new byte[out_bytes]);
+          final int last = ((md[md.length - 2] & 0xFF) << 8) | (md[md.length - 1] & 0xFF);
+          out_bytes = min_bytes + last % (max_bytes - min_bytes + 1);
+        } else {
+          md = SHA3SHAKE.SHA3(suffix, md, new byte[suffix >>> 3]);
+        }
+      }
+      if (!Arrays.equals(md, checkpoint)) wrong++;
+    }
+    final String name = file.getFileName().toString();
+    check(name + ", " + wrong + " of " + expected.size() + " checkpoints wrong", expected.size() == 100 && wrong == 0);
+  }
+
+  static void edwardsChecks() {
+    final Random random = new Random(487);
+    final Ref G = Ref.of(Edwards.G);
+
+    check("G is on the curve", new Edwards().isPoint(Edwards.G.x, Edwards.G.y));
+    check("rG = O", Edwards.G.mul(Edwards.r).isZero());
+    check("0P = O", Edwards.G.mul(BigInteger.TEN).mul(BigInteger.ZERO).isZero());
+
+    for (int i = 0; i < 16; i++) {
+      final BigInteger k = new BigInteger(384, random);
+      final BigInteger a = new BigInteger(256, random);
+      final BigInteger b = new BigInteger(256, random);
+      final Ref P = G.mul(k);
+      final Ref Q = G.mul(b.add(BigInteger.ONE));
+
+      check("fixed-base G.mul #" + i, same(Edwards.G.mul(k), P));
+      final Edwards.Point Pe = Edwards.getPoint(P.y(), P.x().testBit(0));
+      check("getPoint #" + i, same(Pe, P));
+      check("add #" + i, same(Pe.add(Edwards.G), P.add(G)));
+      for (int w = 2; w <= 8; w++) {
+        check("wNAF mul w=" + w + " #" + i, same(Pe.mul(a, w), P.mul(a)));
+      }
+      final Edwards.Point Qe = Edwards.getPoint(Q.y(), Q.x().testBit(0));
+      check("mulAdd #" + i, same(Pe.mulAdd(a, b, Qe), P.mul(a).add(Q.mul(b))));
+      check("G.mulAdd #" + i, same(Edwards.G.mulAdd(a, b, Qe), G.mul(a).add(Q.mul(b))));
+    }
+    check("mul by r - 1", same(Edwards.G.mul(Edwards.r.subtract(BigInteger.ONE)), G.mul(Edwards.r.subtract(BigInteger.ONE))));
+
+    // about half of all y have no point, both must say so the same way
+    final BigInteger[] ys = new BigInteger[32];
+    final boolean[] lsbs = new boolean[ys.length];
+    for (int i = 0; i < ys.length; i++) {
+      ys[i] = new BigInteger(256, random).mod(Edwards.p);
+      lsbs[i] = random.nextBoolean();
+    }
+    final Edwards.Point[] points = Edwards.getPoints(ys, lsbs);
+    for (int i = 0; i < ys.length; i++) {
+      check("getPoints y #" + i, same(points[i], Ref.getPoint(ys[i], lsbs[i])));
+    }
+
+    // the shared ec-encrypt / ec-sign scheme, fed in uneven pieces
+    final SecureRandom secure = new SecureRandom();
+    final Edwards.Key key = Edwards.getKey("password".getBytes());
+    final byte[] m = new byte[1000];
+    random.nextBytes(m);
+    final byte[] c = m.clone();
+    final Edwards.Envelope seal = Edwards.Envelope.seal(key.V(), secure);
+    seal.encrypt(c, 0, 1);
+    seal.encrypt(c, 1, 499);
+    seal.encrypt(c, 500, 500);
+    final byte[] t = seal.tag();
+    final Edwards.Envelope open = Edwards.Envelope.open(key.s(), seal.Z);
+    open.authenticate(c, 0, c.length);
+    check("envelope tag", open.check(t));
+    open.decrypt(c, 0, 700);
+    open.decrypt(c, 700, 300);
+    check("envelope round trip", Arrays.equals(c, m));
+    final Edwards.Envelope wrong = Edwards.Envelope.open(key.s().add(BigInteger.ONE), seal.Z);
+    wrong.authenticate(c, 0, c.length);
+    check("envelope wrong key", !wrong.check(t));
+
+    final Edwards.Signature sig = Edwards.sign(key.s(), m, secure);
+    check("sign then verify", Edwards.verify(key.V(), sig.h(), sig.z(), m));
+    m[0] ^= 1;
+    check("verify altered message", !Edwards.verify(key.V(), sig.h(), sig.z(), m));
+
+    final BigInteger[] inv = Edwards.invertAll(new BigInteger[] { ys[0], BigInteger.ZERO, ys[1], BigInteger.ONE });
+    check("invertAll", inv[0].equals(ys[0].modInverse(Edwards.p)) && inv[1].signum() == 0
+        && inv[2].equals(ys[1].modInverse(Edwards.p)) && inv[3].equals(BigInteger.ONE));
+  }
+
+  /**
+   * bytes 0, 1, 2, ... repeating mod 251, the pattern of the RFC 9861 vectors
+   */
+  static byte[] ptn(final int n) {
+    final byte[] out = new byte[n];
+    for (int i = 0; i < n; i++) out[i] = (byte) (i % 251);
+    return out;
+  }
+
+  static String k12(final byte[] M, final String C, final int piece) {
+    final KangarooTwelve hash = new KangarooTwelve(C.getBytes(), ForkJoinPool.commonPool());
+    for (int pos = 0; pos < M.length; pos += piece) {
+      hash.update(ByteBuffer.wrap(M, pos, Math.min(piece, M.length - pos)));
+    }
+    return Hex.encode(hash.digest(256));
+  }
+
+  /**
+   * The SP 800-185 cSHAKE and ParallelHash samples and the RFC 9861
+   * TurboSHAKE and KangarooTwelve vectors.
+   */
+  static void treeHashChecks() {
+    final SHA3SHAKE cshake = new SHA3SHAKE();
+    cshake.init(128, new byte[0], "Email Signature".getBytes());
+    cshake.absorb(new byte[] { 0, 1, 2, 3 });
+    check("cSHAKE128 sample", Hex.encode(cshake.squeeze(32))
+        .equals("c1c36925b6409a04f1b504fcbca9d82b4017277cb5ed2b2065fc1d3814d5aaf5"));
+    cshake.init(256, new byte[0], "Email Signature".getBytes());
+    cshake.absorb(new byte[] { 0, 1, 2, 3 });
+    check("cSHAKE256 sample", Hex.encode(cshake.squeeze(64))
+        .equals("d008828e2b80ac9d2218ffee1d070c48b8e4c87bff32c9699d5b6896eee0edd1"
+              + "64020e2be0560858d9c00c037e34a96937c561a74c412bb4c746469527281c8c"));
+
+    final byte[] X = new byte[24];
+    for (int i = 0; i < X.length; i++) X[i] = (byte) (((i >> 3) << 4) | (i & 7));
+    final ForkJoinPool pool = ForkJoinPool.commonPool();
+    check("ParallelHash128 sample", Hex.encode(new ParallelHash(128, 8, new byte[0], pool)
+        .update(ByteBuffer.wrap(X)).digest(256, false))
+        .equals("ba8dc1d1d979331d3f813603c67f72609ab5e44b94a0b8f9af46514454a2b4f5"));
+    check("ParallelHash128 sample, S", Hex.encode(new ParallelHash(128, 8, "Parallel Data".getBytes(), pool)
+        .update(ByteBuffer.wrap(X)).digest(256, false))
+        .equals("fc484dcb3f84dceedc353438151bee58157d6efed0445a81f165e495795b7206"));
+    check("ParallelHash256 sample", Hex.encode(new ParallelHash(256, 8, new byte[0], pool)
+        .update(ByteBuffer.wrap(X)).digest(512, false))
+        .equals("bc1ef124da34495e948ead207dd9842235da432d2bbc54b4c110e64c45110553"
+              + "1b7f2a3e0ce055c02805e7c2de1fb746af97a1dd01f43b824e31b87612410429"));
+
+    final SHA3SHAKE turbo = new SHA3SHAKE();
+    turbo.initTurbo(128, 0x1F);
+    check("TurboSHAKE128 empty", Hex.encode(turbo.squeeze(32))
+        .equals("1e415f1c5983aff2169217277d17bb538cd945a397ddec541f1ce41af2c1b74c"));
+    turbo.initTurbo(128, 0x1F);
+    turbo.absorb(ptn(17));
+    check("TurboSHAKE128 ptn(17)", Hex.encode(turbo.squeeze(32))
+        .equals("9c97d036a3bac819db70ede0ca554ec6e4c2a1a4ffbfd9ec269ca6a111161233"));
+
+    // a single node, just one and two leaves, and many, each fed in uneven pieces
+    check("K12 empty", k12(new byte[0], "", 1)
+        .equals("1ac2d450fc3b4205d19da7bfca1b37513c0803577ac7167f06fe2ce1f0ef39e5"));
+    check("K12 ptn(17)", k12(ptn(17), "", 5)
+        .equals("6bf75fa2239198db4772e36478f8e19b0f371205f6a9a93a273f51df37122888"));
+    check("K12 ptn(17^2)", k12(ptn(17 * 17), "", 100)
+        .equals("0c315ebcdedbf61426de7dcf8fb725d1e74675d7f5327a5067f367b108ecb67c"));
+    check("K12 ptn(8192)", k12(ptn(8192), "", 8191)
+        .equals("48f256f6772f9edfb6a8b661ec92dc93b95ebd05a08a17b39ae3490870c926c3"));
+    check("K12 ptn(17^3)", k12(ptn(17 * 17 * 17), "", 3000)
+        .equals("cb552e2ec77d9910701d578b457ddf772c12e322e4ee7fe417f92c758f0d59d0"));
+    check("K12 ptn(17^4)", k12(ptn(17 * 17 * 17 * 17), "", 100000)
+        .equals("8701045e22205345ff4dda05555cbb5c3af1a771c2b89baef37db43d9998b9fe"));
+    check("K12 C = ptn(1)", k12(new byte[0], "\u0000", 1)
+        .equals("fab658db63e94a246188bf7af69a133045f46ee984c56e3c3328caaf1aa1a583"));
+    check("KangarooTwelve.lengthEncode", Hex.encode(KangarooTwelve.lengthEncode(0)).equals("00")
+        && Hex.encode(KangarooTwelve.lengthEncode(12)).equals("0c01")
+        && Hex.encode(KangarooTwelve.lengthEncode(65538)).equals("01000203"));
+  }
+
+  /**
+   * The SP 800-185 KMAC samples, through mac and through begin and finish.
+   */
+  static void kmacChecks() {
+    final byte[] K = new byte[32];
+    for (int i = 0; i < K.length; i++) K[i] = (byte) (0x40 + i);
+    final byte[] X = { 0, 1, 2, 3 };
+
+    check("KMAC128 sample", Hex.encode(new KMAC(128, K, new byte[0]).mac(X, 32))
+        .equals("e5780b0d3ea6f7d3a429c5706aa43a00fadbd7d49628839e3187243f456ee14e"));
+    check("KMAC128 sample, S", Hex.encode(new KMAC(128, K, "My Tagged Application".getBytes()).mac(X, 32))
+        .equals("3b1fba963cd8b0b59e8c1a6d71888b7143651af8ba0a7070c0979e2811324aa5"));
+    final SHA3SHAKE sponge = new KMAC(128, K, new byte[0]).begin(new SHA3SHAKE());
+    sponge.absorb(X, 0, 1);
+    sponge.absorb(X, 1, 3);
+    check("KMACXOF128 sample", Hex.encode(KMAC.finish(sponge, new byte[32], 32, true))
+        .equals("cd83740bbd92ccc8cf032b1481a0f4460e7ca9dd12b08a0c4031178bacd6ec35"));
+  }
+}